@@ -0,0 +1,111 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.AppApplication;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Application context started with one service backend and seeded with datasetSize users,
+ * each of them has one book.
+ * The in-memory database is dropped together with the context after the trial.
+ */
+@State(Scope.Benchmark)
+public class BackendState {
+    private static final int SEED_CHUNK_SIZE = 500;
+
+    @Param({"orm", "template", "jdbc", "storage"})
+    public String backend;
+
+    @Param({"1000", "10000"})
+    public int datasetSize;
+
+    ConfigurableApplicationContext context;
+    UserService userService;
+    BookService bookService;
+    UserDataFacade userDataFacade;
+
+    long[] userIds;
+    long[] bookIds;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(AppApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "app.service.backend=" + backend,
+                        "spring.main.banner-mode=off",
+                        "spring.jpa.properties.hibernate.show_sql=false",
+                        "logging.level.root=WARN")
+                .run();
+        userService = context.getBean(UserService.class);
+        bookService = context.getBean(BookService.class);
+        userDataFacade = context.getBean(UserDataFacade.class);
+        seed();
+    }
+
+    @TearDown(Level.Trial)
+    public void closeContext() {
+        context.close();
+    }
+
+    private void seed() {
+        userIds = new long[datasetSize];
+        bookIds = new long[datasetSize];
+        List<BookDto> books = new ArrayList<>(SEED_CHUNK_SIZE);
+        for (int i = 0; i < datasetSize; i++) {
+            userIds[i] = userService.createUser(newUser(i)).getId();
+            books.add(newBook(userIds[i], i));
+            if (books.size() == SEED_CHUNK_SIZE || i == datasetSize - 1) {
+                List<BookDto> created = bookService.createBooks(books);
+                for (int j = 0; j < created.size(); j++) {
+                    bookIds[i - created.size() + 1 + j] = created.get(j).getId();
+                }
+                books = new ArrayList<>(SEED_CHUNK_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Index into userIds and bookIds, the book at an index belongs to the user at the same index.
+     */
+    int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(datasetSize);
+    }
+
+    long randomUserId() {
+        return userIds[randomIndex()];
+    }
+
+    long randomBookId() {
+        return bookIds[randomIndex()];
+    }
+
+    static UserDto newUser(int number) {
+        UserDto user = new UserDto();
+        user.setFullName("user " + number);
+        user.setTitle("reader");
+        user.setAge(20 + number % 50);
+        return user;
+    }
+
+    static BookDto newBook(Long userId, int number) {
+        BookDto book = new BookDto();
+        book.setUserId(userId);
+        book.setTitle("book " + number);
+        book.setAuthor("author " + number % 100);
+        book.setPageCount(100 + number % 900);
+        return book;
+    }
+}
@@ -0,0 +1,64 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-row CRUD of BookService, and a batch insert followed by the delete of all books of a user.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookServiceBenchmark {
+
+    /**
+     * A user of its own per thread, deleting his books leaves the seeded books alone.
+     */
+    @State(Scope.Thread)
+    public static class BatchState {
+        @Param({"10", "100"})
+        public int batchSize;
+
+        long ownerId;
+
+        @Setup(Level.Trial)
+        public void createOwner(BackendState state) {
+            ownerId = state.userService.createUser(BackendState.newUser(3)).getId();
+        }
+    }
+
+    @Benchmark
+    public BookDto getBookById(BackendState state) {
+        return state.bookService.getBookById(state.randomBookId());
+    }
+
+    @Benchmark
+    public BookDto updateBook(BackendState state) {
+        int index = state.randomIndex();
+        BookDto update = BackendState.newBook(state.userIds[index], index);
+        return state.bookService.updateBook(update, state.bookIds[index]);
+    }
+
+    @Benchmark
+    public void createAndDeleteBook(BackendState state) {
+        BookDto book = state.bookService.createBook(BackendState.newBook(state.randomUserId(), 2));
+        state.bookService.deleteBookById(book.getId());
+    }
+
+    @Benchmark
+    public List<BookDto> createAndDeleteBooks(BackendState state, BatchState batch) {
+        List<BookDto> books = new ArrayList<>(batch.batchSize);
+        for (int i = 0; i < batch.batchSize; i++) {
+            books.add(BackendState.newBook(batch.ownerId, i));
+        }
+        List<BookDto> created = state.bookService.createBooks(books);
+        state.bookService.deleteBooksByUserId(batch.ownerId);
+        return created;
+    }
+}
@@ -0,0 +1,67 @@
+package com.edu.ulab.app.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getUserWithBooks with concurrency requests in flight at once, one operation is the whole wave:
+ * the blocking facade on BLOCKING_THREADS threads, the default Tomcat pool, against the reactive facade
+ * with every request subscribed at once. The wave time divided by concurrency is the mean time per request.
+ * <p>
+ * Only the facades are measured, sockets and HTTP parsing are not. Connection-level load belongs to an external
+ * load generator against the default and the reactive profile.
+ * Run with -Djmh.threads=1, the concurrency comes from the wave.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConcurrencyBenchmark {
+    private static final int BLOCKING_THREADS = 200;
+
+    @State(Scope.Benchmark)
+    public static class WaveState {
+        @Param({"1000", "10000"})
+        public int concurrency;
+
+        ExecutorService blockingPool;
+
+        @Setup(Level.Trial)
+        public void startPool() {
+            blockingPool = Executors.newFixedThreadPool(BLOCKING_THREADS);
+        }
+
+        @TearDown(Level.Trial)
+        public void stopPool() {
+            blockingPool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void blockingGetUserWithBooks(ReactiveStackState state, WaveState wave, Blackhole blackhole) {
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[wave.concurrency];
+        for (int i = 0; i < wave.concurrency; i++) {
+            long userId = state.randomUserId();
+            requests[i] = CompletableFuture.supplyAsync(
+                    () -> state.userDataFacade.getUserWithBooks(userId), wave.blockingPool);
+        }
+        CompletableFuture.allOf(requests).join();
+        blackhole.consume(requests);
+    }
+
+    @Benchmark
+    public void reactiveGetUserWithBooks(ReactiveStackState state, WaveState wave, Blackhole blackhole) {
+        Flux.range(0, wave.concurrency)
+                .flatMap(i -> state.reactiveUserDataFacade.getUserWithBooks(state.randomUserId()), wave.concurrency)
+                .doOnNext(blackhole::consume)
+                .then()
+                .block();
+    }
+}
@@ -0,0 +1,59 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.request.UserRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full UserDataFacade flows, the way the controllers run them.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FacadeBenchmark {
+    private static final int BOOKS_PER_REQUEST = 5;
+
+    @Benchmark
+    public UserBookResponse getUserWithBooks(BackendState state) {
+        return state.userDataFacade.getUserWithBooks(state.randomUserId());
+    }
+
+    @Benchmark
+    public UserBookResponse createUserWithBooks(BackendState state) {
+        return state.userDataFacade.createUserWithBooks(newRequest());
+    }
+
+    @Benchmark
+    public UserBookResponse updateUserWithBooks(BackendState state) {
+        return state.userDataFacade.updateUserWithBooks(newRequest(), state.randomUserId());
+    }
+
+    private static UserBookRequest newRequest() {
+        UserRequest userRequest = new UserRequest();
+        userRequest.setFullName("facade user");
+        userRequest.setTitle("reader");
+        userRequest.setAge(30);
+
+        List<BookRequest> bookRequests = new ArrayList<>(BOOKS_PER_REQUEST);
+        for (int i = 0; i < BOOKS_PER_REQUEST; i++) {
+            BookRequest bookRequest = new BookRequest();
+            bookRequest.setTitle("facade book " + i);
+            bookRequest.setAuthor("facade author");
+            bookRequest.setPageCount(300);
+            bookRequests.add(bookRequest);
+        }
+
+        UserBookRequest request = new UserBookRequest();
+        request.setUserRequest(userRequest);
+        request.setBookRequests(bookRequests);
+        return request;
+    }
+}
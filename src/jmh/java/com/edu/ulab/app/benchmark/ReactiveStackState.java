@@ -0,0 +1,73 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.AppApplication;
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.facade.ReactiveUserDataFacade;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Application context of the reactive profile without a web server, so both the blocking facade
+ * on the JDBC pool and the reactive one on the R2DBC pool are available over the same database.
+ * Seeded with datasetSize users, each of them has one book.
+ */
+@State(Scope.Benchmark)
+public class ReactiveStackState {
+    private static final int SEED_CHUNK_SIZE = 500;
+
+    @Param({"10000"})
+    public int datasetSize;
+
+    ConfigurableApplicationContext context;
+    UserDataFacade userDataFacade;
+    ReactiveUserDataFacade reactiveUserDataFacade;
+
+    long[] userIds;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(AppApplication.class)
+                .profiles("reactive")
+                .logStartupInfo(false)
+                .properties(
+                        "app.service.backend=jdbc",
+                        "spring.main.banner-mode=off",
+                        "spring.jpa.properties.hibernate.show_sql=false",
+                        "logging.level.root=WARN")
+                // the profile asks for a reactive web server, command line arguments take precedence
+                .run("--spring.main.web-application-type=none");
+        userDataFacade = context.getBean(UserDataFacade.class);
+        reactiveUserDataFacade = context.getBean(ReactiveUserDataFacade.class);
+        seed(context.getBean(UserService.class), context.getBean(BookService.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void closeContext() {
+        context.close();
+    }
+
+    private void seed(UserService userService, BookService bookService) {
+        userIds = new long[datasetSize];
+        List<BookDto> books = new ArrayList<>(SEED_CHUNK_SIZE);
+        for (int i = 0; i < datasetSize; i++) {
+            userIds[i] = userService.createUser(BackendState.newUser(i)).getId();
+            books.add(BackendState.newBook(userIds[i], i));
+            if (books.size() == SEED_CHUNK_SIZE || i == datasetSize - 1) {
+                bookService.createBooks(books);
+                books = new ArrayList<>(SEED_CHUNK_SIZE);
+            }
+        }
+    }
+
+    long randomUserId() {
+        return userIds[ThreadLocalRandom.current().nextInt(datasetSize)];
+    }
+}
@@ -0,0 +1,42 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.BookDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BookService.getBooksByUserId for a user with booksPerUser books.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserBooksBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ReaderState {
+        @Param({"1", "100", "10000"})
+        public int booksPerUser;
+
+        long readerId;
+
+        @Setup(Level.Trial)
+        public void createReader(BackendState state) {
+            readerId = state.userService.createUser(BackendState.newUser(0)).getId();
+            List<BookDto> books = new ArrayList<>(booksPerUser);
+            for (int i = 0; i < booksPerUser; i++) {
+                books.add(BackendState.newBook(readerId, i));
+            }
+            state.bookService.createBooks(books);
+        }
+    }
+
+    @Benchmark
+    public List<BookDto> getBooksByUserId(BackendState state, ReaderState reader) {
+        return state.bookService.getBooksByUserId(reader.readerId);
+    }
+}
@@ -0,0 +1,33 @@
+package com.edu.ulab.app.benchmark;
+
+import com.edu.ulab.app.dto.UserDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-row CRUD of UserService.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    @Benchmark
+    public UserDto getUserById(BackendState state) {
+        return state.userService.getUserById(state.randomUserId());
+    }
+
+    @Benchmark
+    public UserDto updateUser(BackendState state) {
+        return state.userService.updateUser(BackendState.newUser(1), state.randomUserId());
+    }
+
+    @Benchmark
+    public void createAndDeleteUser(BackendState state) {
+        UserDto user = state.userService.createUser(BackendState.newUser(2));
+        state.userService.deleteUserById(user.getId());
+    }
+}
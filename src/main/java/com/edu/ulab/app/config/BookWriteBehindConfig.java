@@ -0,0 +1,39 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.writebehind.BookWriteBehindQueue;
+import com.edu.ulab.app.storage.StoragePersistence;
+import com.edu.ulab.app.util.UnitOfWork;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Write-behind of POST /book/create when app.book-write-behind.enabled, see BookWriteBehindQueue.
+ * The queue is closed before the transaction manager and the DataSource it writes through,
+ * and before the StoragePersistence of the storage backend: that is created first, so it is closed last.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "app.book-write-behind.enabled", havingValue = "true")
+public class BookWriteBehindConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public BookWriteBehindQueue bookWriteBehindQueue(
+            BookService bookService,
+            UnitOfWork unitOfWork,
+            @Value("${app.book-write-behind.capacity:10000}") int capacity,
+            @Value("${app.book-write-behind.batch-size:100}") int batchSize,
+            @Value("${app.book-write-behind.flush-interval:20ms}") Duration flushInterval,
+            @Value("${app.book-write-behind.drain-timeout:30s}") Duration drainTimeout,
+            MeterRegistry meterRegistry,
+            ObjectProvider<StoragePersistence> storagePersistence) {
+        storagePersistence.getIfAvailable();
+        return new BookWriteBehindQueue(bookService, unitOfWork, capacity, batchSize, flushInterval, drainTimeout,
+                meterRegistry);
+    }
+}
@@ -0,0 +1,62 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.util.MdcTaskDecorator;
+import com.edu.ulab.app.util.RequestTracer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bulkhead between the container threads and the database.
+ * Controllers hand the facade work to databaseExecutor and return a CompletableFuture,
+ * streamed responses run on it as the MVC async executor, so a slow database blocks
+ * at most pool-size threads and queue-capacity waiting requests.
+ * A request beyond that is rejected at once and answered with 503, counted as db.executor.rejected.
+ * Tasks run with the MDC and the traced request of the submitting thread.
+ * Pool and queue usage are published under the executor.* metrics with name=databaseExecutor.
+ */
+@Configuration
+public class DatabaseExecutorConfig implements WebMvcConfigurer {
+    private final ThreadPoolTaskExecutor databaseExecutor;
+
+    public DatabaseExecutorConfig(@Qualifier("databaseExecutor") ThreadPoolTaskExecutor databaseExecutor) {
+        this.databaseExecutor = databaseExecutor;
+    }
+
+    @Bean
+    public static ThreadPoolTaskExecutor databaseExecutor(@Value("${app.db-executor.pool-size:10}") int poolSize,
+                                                          @Value("${app.db-executor.queue-capacity:100}") int queueCapacity,
+                                                          MeterRegistry meterRegistry) {
+        Counter rejected = Counter.builder("db.executor.rejected")
+                .description("Requests rejected because the database executor queue was full")
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("db-");
+        MdcTaskDecorator mdcTaskDecorator = new MdcTaskDecorator();
+        executor.setTaskDecorator(task -> mdcTaskDecorator.decorate(RequestTracer.propagate(task)));
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejected.increment();
+            throw new RejectedExecutionException("Database executor queue is full");
+        });
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(databaseExecutor);
+    }
+}
@@ -0,0 +1,25 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.util.IdempotencyCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Remembers the create responses by rqid, see IdempotencyCache.
+ */
+@Configuration(proxyBeanMethods = false)
+public class IdempotencyConfig {
+
+    @Bean
+    public IdempotencyCache idempotencyCache(@Value("${app.idempotency.maximum-size:10000}") long maximumSize,
+                                             @Value("${app.idempotency.ttl:10m}") Duration ttl,
+                                             MeterRegistry meterRegistry) {
+        IdempotencyCache idempotencyCache = new IdempotencyCache(maximumSize, ttl);
+        idempotencyCache.bindTo(meterRegistry);
+        return idempotencyCache;
+    }
+}
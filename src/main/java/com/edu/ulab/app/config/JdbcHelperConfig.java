@@ -0,0 +1,51 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.util.JdbcHelper;
+import com.edu.ulab.app.util.StatementCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Hands the pooled DataSource (HikariCP, configured by spring.datasource.hikari)
+ * over to JdbcHelper, so the pure JDBC services share the pool with JPA and JdbcTemplate.
+ * With app.jdbc.statement-cache-size above 0 JdbcHelper also reuses prepared statements,
+ * their hit rate is published under the jdbc.statements.cache.* metrics.
+ */
+@Configuration
+public class JdbcHelperConfig implements InitializingBean, DisposableBean {
+    private final DataSource dataSource;
+    private final MeterRegistry meterRegistry;
+    private final int statementCacheSize;
+    private StatementCache statementCache;
+
+    public JdbcHelperConfig(DataSource dataSource,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.jdbc.statement-cache-size:32}") int statementCacheSize) {
+        this.dataSource = dataSource;
+        this.meterRegistry = meterRegistry;
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        JdbcHelper.setDataSource(dataSource);
+        if (statementCacheSize > 0) {
+            statementCache = new StatementCache(statementCacheSize);
+            statementCache.bindTo(meterRegistry);
+            JdbcHelper.setStatementCache(statementCache);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (statementCache != null) {
+            JdbcHelper.setStatementCache(null);
+            statementCache.clear();
+        }
+    }
+}
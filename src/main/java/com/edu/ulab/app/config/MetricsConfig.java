@@ -0,0 +1,57 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.facade.BookDataFacade;
+import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.facade.UserImportFacade;
+import com.edu.ulab.app.util.MeteredDataSource;
+import com.edu.ulab.app.util.MethodMetricsInterceptor;
+import com.edu.ulab.app.util.RequestTraceInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.Set;
+
+/**
+ * Metrics below the HTTP layer, which is timed by http.server.requests:
+ * facade.calls timers and facade.statements summaries for the public facade methods,
+ * jdbc.statements and jdbc.query.rows for everything using the DataSource.
+ * The service.calls timers are added by ServiceBackendConfig.
+ * The same proxies record the facade spans of traced requests.
+ * Histograms and percentiles are configured under management.metrics.distribution,
+ * the backend tag is common to all meters.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfig {
+    private static final Set<Class<?>> METERED_FACADES =
+            Set.of(UserDataFacade.class, BookDataFacade.class, UserImportFacade.class);
+
+    /**
+     * Static and resolving the registry late, so that creating the post processor
+     * does not create the MeterRegistry before its own post processors.
+     */
+    @Bean
+    public static BeanPostProcessor metricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof MeteredDataSource)) {
+                    return new MeteredDataSource(dataSource, meterRegistry::getObject);
+                }
+                if (METERED_FACADES.contains(bean.getClass())) {
+                    ProxyFactory proxyFactory = new ProxyFactory(bean);
+                    proxyFactory.setProxyTargetClass(true);
+                    proxyFactory.addAdvice(new MethodMetricsInterceptor(
+                            meterRegistry.getObject(), "facade.calls", "facade.statements", bean.getClass()));
+                    proxyFactory.addAdvice(new RequestTraceInterceptor("facade", bean.getClass()));
+                    return proxyFactory.getProxy(bean.getClass().getClassLoader());
+                }
+                return bean;
+            }
+        };
+    }
+}
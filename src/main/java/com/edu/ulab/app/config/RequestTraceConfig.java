@@ -0,0 +1,27 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.util.RequestTraceEndpoint;
+import com.edu.ulab.app.util.RequestTracer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Span recording of sampled requests, see RequestTracer.
+ * app.trace.sample-rate 0 turns it off, then the only cost left is a ThreadLocal read per proxy call and statement.
+ */
+@Configuration(proxyBeanMethods = false)
+public class RequestTraceConfig {
+
+    @Bean
+    public RequestTracer requestTracer(@Value("${app.trace.sample-rate:0.0}") double sampleRate,
+                                       @Value("${app.trace.slowest-per-endpoint:10}") int slowestPerEndpoint,
+                                       @Value("${app.trace.max-spans:1000}") int maxSpans) {
+        return new RequestTracer(sampleRate, slowestPerEndpoint, maxSpans);
+    }
+
+    @Bean
+    public RequestTraceEndpoint requestTraceEndpoint(RequestTracer requestTracer) {
+        return new RequestTraceEndpoint(requestTracer);
+    }
+}
@@ -0,0 +1,92 @@
+package com.edu.ulab.app.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Hibernate second-level cache of the ORM backend, enabled with app.orm.second-level-cache.enabled.
+ * Never with app.service.backend = routing, the other backends would not invalidate it.
+ * Every region is a Caffeine cache behind the JCache API, bounded by app.orm.second-level-cache.maximum-size:
+ * the person and book entities, the books of a user query (BookRepository.findBooksByUserId),
+ * the book ids of a user query (UserRepository.findBookIdsOfUser) and the default query results region.
+ * <p>
+ * Regions missing here fail the startup instead of being created unbounded.
+ * The update timestamps region is not bounded, it holds one entry per table,
+ * and an evicted timestamp would let stale query results through.
+ * Entries are stored by reference, Hibernate caches its own immutable disassembled state,
+ * the JCache default would serialize a copy on every put and get.
+ * <p>
+ * Size, hit, miss and eviction counts of every region are published under the cache.* metrics
+ * as cache hibernate.{region}, the totals of Hibernate under the hibernate.* metrics.
+ */
+@Configuration
+@ConditionalOnExpression("${app.orm.second-level-cache.enabled:false} and '${app.service.backend:jdbc}' != 'routing'")
+public class SecondLevelCacheConfig {
+    private static final List<String> BOUNDED_REGIONS = List.of(
+            "person",
+            "book",
+            "booksByUser",
+            "bookIdsOfUser",
+            RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager(
+            @Value("${app.orm.second-level-cache.maximum-size:10000}") long maximumSize,
+            @Value("${app.orm.second-level-cache.expire-after-write:0s}") Duration expireAfterWrite) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager();
+
+        CaffeineConfiguration<Object, Object> bounded = byReference();
+        bounded.setMaximumSize(OptionalLong.of(maximumSize));
+        if (!expireAfterWrite.isZero()) {
+            bounded.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        }
+        BOUNDED_REGIONS.forEach(region -> cacheManager.createCache(region, bounded));
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, byReference());
+        return cacheManager;
+    }
+
+    @Bean
+    public MeterBinder secondLevelCacheMetrics(CacheManager secondLevelCacheManager) {
+        return registry -> secondLevelCacheManager.getCacheNames().forEach(region -> {
+            Cache<?, ?> cache = secondLevelCacheManager.getCache(region).unwrap(Cache.class);
+            CaffeineCacheMetrics.monitor(registry, cache, "hibernate." + region);
+        });
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheProperties(CacheManager secondLevelCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> byReference() {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStoreByValue(false);
+        configuration.setNativeStatisticsEnabled(true);
+        return configuration;
+    }
+}
@@ -0,0 +1,83 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.cache.CachingBookService;
+import com.edu.ulab.app.service.cache.CachingUserService;
+import com.edu.ulab.app.service.cache.ServiceCache;
+import com.edu.ulab.app.service.impl.*;
+import com.edu.ulab.app.service.routing.ServiceRouter;
+import com.edu.ulab.app.util.MethodMetricsInterceptor;
+import com.edu.ulab.app.util.RequestTraceInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.target.SingletonTargetSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Selects the service implementations used by the facades: app.service.backend = orm | template | jdbc | storage,
+ * or routing to choose among orm, template and jdbc per operation, see ServiceRoutingConfig.
+ * The selected bean is wrapped into the caching decorator when the read cache is enabled,
+ * and exposed through an interface-only proxy, so it is not registered twice under its own class.
+ * The proxy times every call as service.calls and records it as a span of traced requests.
+ */
+@Configuration
+public class ServiceBackendConfig {
+
+    @Bean
+    @Primary
+    public UserService userService(@Value("${app.service.backend:jdbc}") String backend,
+                                   UserServiceImpl ormService,
+                                   UserServiceImplTemplate templateService,
+                                   UserServiceImplJDBC jdbcService,
+                                   UserServiceImplStorage storageService,
+                                   ObjectProvider<ServiceRouter<UserService>> router,
+                                   ObjectProvider<ServiceCache> serviceCache,
+                                   MeterRegistry meterRegistry) {
+        UserService selected = switch (backend) {
+            case "orm" -> ormService;
+            case "template" -> templateService;
+            case "jdbc" -> jdbcService;
+            case "storage" -> storageService;
+            case "routing" -> router.getObject().proxy();
+            default -> throw new IllegalStateException("Unknown service backend: " + backend);
+        };
+        ServiceCache cache = serviceCache.getIfAvailable();
+        UserService target = cache == null ? selected : new CachingUserService(selected, cache);
+        return meteredProxy(UserService.class, target, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public BookService bookService(@Value("${app.service.backend:jdbc}") String backend,
+                                   BookServiceImpl ormService,
+                                   BookServiceImplTemplate templateService,
+                                   BookServiceImplJDBC jdbcService,
+                                   BookServiceImplStorage storageService,
+                                   ObjectProvider<ServiceRouter<BookService>> router,
+                                   ObjectProvider<ServiceCache> serviceCache,
+                                   MeterRegistry meterRegistry) {
+        BookService selected = switch (backend) {
+            case "orm" -> ormService;
+            case "template" -> templateService;
+            case "jdbc" -> jdbcService;
+            case "storage" -> storageService;
+            case "routing" -> router.getObject().proxy();
+            default -> throw new IllegalStateException("Unknown service backend: " + backend);
+        };
+        ServiceCache cache = serviceCache.getIfAvailable();
+        BookService target = cache == null ? selected : new CachingBookService(selected, cache);
+        return meteredProxy(BookService.class, target, meterRegistry);
+    }
+
+    private static <T> T meteredProxy(Class<T> serviceInterface, T target, MeterRegistry meterRegistry) {
+        ProxyFactory proxyFactory = new ProxyFactory(serviceInterface, new SingletonTargetSource(target));
+        proxyFactory.addAdvice(new MethodMetricsInterceptor(meterRegistry, "service.calls", null, serviceInterface));
+        proxyFactory.addAdvice(new RequestTraceInterceptor("service", serviceInterface));
+        return serviceInterface.cast(proxyFactory.getProxy());
+    }
+}
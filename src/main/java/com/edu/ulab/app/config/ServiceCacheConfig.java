@@ -0,0 +1,28 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.service.cache.ServiceCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Read cache of the services, enabled with app.cache.enabled.
+ * Cache statistics are published under the cache.* metrics.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.cache.enabled", havingValue = "true")
+public class ServiceCacheConfig {
+
+    @Bean
+    public ServiceCache serviceCache(@Value("${app.cache.maximum-size:10000}") long maximumSize,
+                                     @Value("${app.cache.expire-after-write:0s}") Duration expireAfterWrite,
+                                     MeterRegistry meterRegistry) {
+        ServiceCache serviceCache = new ServiceCache(maximumSize, expireAfterWrite);
+        serviceCache.bindTo(meterRegistry);
+        return serviceCache;
+    }
+}
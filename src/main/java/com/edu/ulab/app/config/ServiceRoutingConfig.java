@@ -0,0 +1,108 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.service.impl.BookServiceImpl;
+import com.edu.ulab.app.service.impl.BookServiceImplJDBC;
+import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
+import com.edu.ulab.app.service.impl.UserServiceImpl;
+import com.edu.ulab.app.service.impl.UserServiceImplJDBC;
+import com.edu.ulab.app.service.impl.UserServiceImplTemplate;
+import com.edu.ulab.app.service.routing.ServiceRouter;
+import com.edu.ulab.app.service.routing.ServiceRoutingEndpoint;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.target.SingletonTargetSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-operation routing of the service calls between the SQL backends, app.service.backend = routing,
+ * configured by app.service.routing, see ServiceRouter.
+ * Only orm, template and jdbc can be mixed: they share the database and join the transaction of the unit of work,
+ * storage keeps its own data.
+ * <p>
+ * Hibernate defers inserts and updates to the flush, so when orm is mixed with the others, a call routed to orm
+ * inside a transaction is flushed before it returns and the statements of the other backends see its rows.
+ * The other backends would not invalidate the second-level cache of orm, SecondLevelCacheConfig is off with routing.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.service.backend", havingValue = "routing")
+public class ServiceRoutingConfig {
+    @Bean
+    @ConfigurationProperties("app.service.routing")
+    public ServiceRoutingProperties serviceRoutingProperties() {
+        return new ServiceRoutingProperties();
+    }
+
+    @Bean
+    public ServiceRouter<UserService> userServiceRouter(
+            ServiceRoutingProperties properties,
+            UserServiceImpl ormService,
+            UserServiceImplTemplate templateService,
+            UserServiceImplJDBC jdbcService,
+            EntityManager entityManager) {
+        return router(UserService.class, properties, properties.getUserOperations(),
+                ormService, templateService, jdbcService, entityManager);
+    }
+
+    @Bean
+    public ServiceRouter<BookService> bookServiceRouter(
+            ServiceRoutingProperties properties,
+            BookServiceImpl ormService,
+            BookServiceImplTemplate templateService,
+            BookServiceImplJDBC jdbcService,
+            EntityManager entityManager) {
+        return router(BookService.class, properties, properties.getBookOperations(),
+                ormService, templateService, jdbcService, entityManager);
+    }
+
+    @Bean
+    public ServiceRoutingEndpoint serviceRoutingEndpoint(List<ServiceRouter<?>> routers) {
+        return new ServiceRoutingEndpoint(routers);
+    }
+
+    private static <S> ServiceRouter<S> router(Class<S> serviceInterface,
+                                               ServiceRoutingProperties properties,
+                                               Map<String, String> operations,
+                                               S ormService,
+                                               S templateService,
+                                               S jdbcService,
+                                               EntityManager entityManager) {
+        ServiceRoutingProperties.Adaptive adaptive = properties.getAdaptive();
+        List<String> candidates = adaptive.isEnabled() ? adaptive.getCandidates() : List.of();
+
+        Set<String> routedBackends = new HashSet<>(operations.values());
+        routedBackends.add(properties.getDefaultBackend());
+        routedBackends.addAll(candidates);
+        boolean ormMixed = routedBackends.contains("orm") && routedBackends.size() > 1;
+
+        Map<String, S> backends = Map.of(
+                "orm", ormMixed ? flushedAfterCall(serviceInterface, ormService, entityManager) : ormService,
+                "template", templateService,
+                "jdbc", jdbcService);
+        return new ServiceRouter<>(serviceInterface, backends, properties.getDefaultBackend(),
+                operations, candidates, adaptive.getExploreRate(), adaptive.getSmoothing());
+    }
+
+    private static <S> S flushedAfterCall(Class<S> serviceInterface, S target, EntityManager entityManager) {
+        ProxyFactory proxyFactory = new ProxyFactory(serviceInterface, new SingletonTargetSource(target));
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            Object result = invocation.proceed();
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                entityManager.flush();
+            }
+            return result;
+        });
+        return serviceInterface.cast(proxyFactory.getProxy());
+    }
+}
@@ -0,0 +1,29 @@
+package com.edu.ulab.app.config;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * app.service.routing, used with app.service.backend = routing.
+ * Operations are method names of the service interface, overloads with their parameter count
+ * in brackets in YAML: "[getBooksByUserId/3]".
+ */
+@Data
+public class ServiceRoutingProperties {
+    private String defaultBackend = "jdbc";
+    private Map<String, String> userOperations = new HashMap<>();
+    private Map<String, String> bookOperations = new HashMap<>();
+    private Adaptive adaptive = new Adaptive();
+
+    @Data
+    public static class Adaptive {
+        private boolean enabled;
+        private List<String> candidates = new ArrayList<>(List.of("orm", "template", "jdbc"));
+        private double exploreRate = 0.05;
+        private double smoothing = 0.05;
+    }
+}
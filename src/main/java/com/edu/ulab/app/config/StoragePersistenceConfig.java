@@ -0,0 +1,31 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.storage.Storage;
+import com.edu.ulab.app.storage.StoragePersistence;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Durable in-memory storage when app.storage.persistence.enabled, see StoragePersistence.
+ * The storage is recovered at startup, before requests are served, and snapshotted once more at shutdown.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "app.storage.persistence.enabled", havingValue = "true")
+public class StoragePersistenceConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public StoragePersistence storagePersistence(
+            Storage storage,
+            @Value("${app.storage.persistence.directory:./data/storage}") Path directory,
+            @Value("${app.storage.persistence.sync-interval:0s}") Duration syncInterval,
+            @Value("${app.storage.persistence.snapshot-interval:10m}") Duration snapshotInterval,
+            MeterRegistry meterRegistry) {
+        return new StoragePersistence(storage, directory, syncInterval, snapshotInterval, meterRegistry);
+    }
+}
@@ -0,0 +1,23 @@
+package com.edu.ulab.app.config;
+
+import com.edu.ulab.app.util.UserLockManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Per-user locks of the facade writes, see UserLockManager.
+ */
+@Configuration(proxyBeanMethods = false)
+public class UserLockConfig {
+
+    @Bean
+    public UserLockManager userLockManager(@Value("${app.user-locks.stripes:1024}") int stripes,
+                                           @Value("${app.user-locks.max-wait:5s}") Duration maxWait,
+                                           MeterRegistry meterRegistry) {
+        return new UserLockManager(stripes, maxWait, meterRegistry);
+    }
+}
@@ -0,0 +1,7 @@
+package com.edu.ulab.app.exception;
+
+public class RequestIdConflictException extends RuntimeException {
+    public RequestIdConflictException(String message) {
+        super(message);
+    }
+}
@@ -2,65 +2,226 @@ package com.edu.ulab.app.facade;
 
 import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.WrongBookException;
 import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.mapper.UserMapper;
 import com.edu.ulab.app.service.BookService;
 import com.edu.ulab.app.service.UserService;
-import com.edu.ulab.app.service.impl.BookServiceImpl;
-import com.edu.ulab.app.service.impl.BookServiceImplJDBC;
-import com.edu.ulab.app.service.impl.BookServiceImplTemplate;
-import com.edu.ulab.app.service.impl.UserServiceImplTemplate;
+import com.edu.ulab.app.service.writebehind.BookWriteBehindQueue;
+import com.edu.ulab.app.util.UnitOfWork;
 import com.edu.ulab.app.web.request.BookRequest;
 import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.BookBatchResponse;
+import com.edu.ulab.app.web.response.BookPageResponse;
 import com.edu.ulab.app.web.response.BookResponse;
 import com.edu.ulab.app.web.response.UserBookResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 public class BookDataFacade {
     private final BookService bookService;
     private final BookMapper bookMapper;
+    private final UnitOfWork unitOfWork;
+    private final ObjectMapper objectMapper;
+    private final BookWriteBehindQueue writeBehindQueue;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int maxIds;
 
-    public BookDataFacade(BookServiceImplJDBC bookService, BookMapper bookMapper) {
+    public BookDataFacade(BookService bookService,
+                          BookMapper bookMapper,
+                          UnitOfWork unitOfWork,
+                          ObjectMapper objectMapper,
+                          ObjectProvider<BookWriteBehindQueue> writeBehindQueue,
+                          @Value("${app.book-page.default-size:100}") int defaultPageSize,
+                          @Value("${app.book-page.max-size:1000}") int maxPageSize,
+                          @Value("${app.multi-get.max-ids:1000}") int maxIds) {
         this.bookService = bookService;
         this.bookMapper = bookMapper;
+        this.unitOfWork = unitOfWork;
+        this.objectMapper = objectMapper;
+        this.writeBehindQueue = writeBehindQueue.getIfAvailable();
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxIds = maxIds;
     }
 
+    /**
+     * With the write-behind queue the book is only queued, its id is reserved up front.
+     */
     public BookResponse createBook(BookRequest request) {
         log.info("Got book request: {}", request);
         BookDto bookDto = bookFromRequest(request);
-        BookDto createdBook = bookService.createBook(bookDto);
+        BookDto createdBook = writeBehindQueue == null
+                ? bookService.createBook(bookDto)
+                : writeBehindQueue.enqueue(bookDto);
         log.info("Created book: {}", createdBook);
         return buildBookResponse(createdBook);
     }
 
     public BookResponse getBookById(Long bookId) {
         log.info("Got book request: {}", bookId);
-        BookDto bookDto = bookService.getBookById(bookId);
+        BookDto pendingBook = writeBehindQueue == null ? null : writeBehindQueue.pendingBook(bookId);
+        BookDto bookDto = pendingBook != null ? pendingBook : bookService.getBookById(bookId);
         log.info("Book got: {}", bookDto);
         return buildBookResponse(bookDto);
     }
 
+    /**
+     * Books from one query per chunk of ids, ids without a book are listed in missingIds.
+     */
+    public BookBatchResponse getBooksByIds(List<Long> bookIds) {
+        log.info("Got books request: {}", bookIds);
+        if (bookIds == null || bookIds.contains(null)) {
+            throw new WrongBookException("Book id is null");
+        }
+        List<Long> ids = bookIds.stream().distinct().toList();
+        if (ids.size() > maxIds) {
+            throw new WrongBookException(String.format("At most %d book ids can be requested at once", maxIds));
+        }
+
+        Map<Long, BookDto> pendingBooks = pendingBooks(ids);
+        List<Long> storedIds = ids.stream().filter(id -> !pendingBooks.containsKey(id)).toList();
+        Map<Long, BookDto> books = unitOfWork.read(() -> bookService.getBooksByIds(storedIds))
+                .stream()
+                .collect(Collectors.toMap(BookDto::getId, Function.identity()));
+        books.putAll(pendingBooks);
+        BookBatchResponse response = BookBatchResponse.builder()
+                .books(ids.stream()
+                        .filter(books::containsKey)
+                        .map(id -> toBookResponse(books.get(id)))
+                        .toList())
+                .missingIds(ids.stream().filter(id -> !books.containsKey(id)).toList())
+                .build();
+        log.info("Books found: {}, missing: {}", response.getBooks().size(), response.getMissingIds());
+        return response;
+    }
+
+    /**
+     * Keyset pagination over the books of the user.
+     * One extra book is read to find out whether there is a next page.
+     */
+    public BookPageResponse getBooksByUserId(Long userId, String pageToken, Integer size) {
+        log.info("Got 'books of user' page request: userId {}, pageToken {}, size {}", userId, pageToken, size);
+        long afterId = PageToken.decode(userId, pageToken);
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        if (pageSize < 1) {
+            throw new WrongBookException("Page size must be positive");
+        }
+
+        awaitQueuedBooksOfUser(userId);
+        List<BookDto> books = bookService.getBooksByUserId(userId, afterId, pageSize + 1);
+        boolean hasNext = books.size() > pageSize;
+        List<BookDto> page = hasNext ? books.subList(0, pageSize) : books;
+
+        BookPageResponse response = BookPageResponse.builder()
+                .books(page.stream().map(BookDataFacade::toBookResponse).toList())
+                .nextPageToken(hasNext ? PageToken.encode(userId, page.get(pageSize - 1).getId()) : null)
+                .build();
+        log.info("Books page built: {} books, next page token {}", page.size(), response.getNextPageToken());
+        return response;
+    }
+
+    /**
+     * Writes all books of the user after the page token as a JSON array,
+     * each row is serialized as soon as it is read, so the whole list is never held in memory.
+     * The token is checked before anything is written. A failed read leaves the array open and aborts the response,
+     * so a truncated list never looks complete.
+     * Queued books of the user are awaited in the body, on the async executor instead of the request thread.
+     */
+    public StreamingResponseBody streamBooksByUserId(Long userId, String pageToken) {
+        log.info("Got 'books of user' stream request: userId {}, pageToken {}", userId, pageToken);
+        long afterId = PageToken.decode(userId, pageToken);
+        return out -> {
+            awaitQueuedBooksOfUser(userId);
+            unitOfWork.read(() -> {
+                try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    generator.writeStartArray();
+                    bookService.forEachBookByUserId(userId, afterId, book -> writeBook(generator, book));
+                    generator.writeEndArray();
+                } catch (IOException exc) {
+                    throw new UncheckedIOException(exc);
+                }
+                return null;
+            });
+        };
+    }
+
+    private static void writeBook(JsonGenerator generator, BookDto book) {
+        try {
+            generator.writeObject(toBookResponse(book));
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
     public BookResponse updateBook(BookRequest request, Long id) {
         log.info("Got book update request: {}", request);
         BookDto bookDto = bookFromRequest(request);
-        BookDto updatedBook = bookService.updateBook(bookDto, id);
+        if (writeBehindQueue != null) {
+            writeBehindQueue.awaitBook(id);
+        }
+        BookDto updatedBook = unitOfWork.execute(() -> bookService.updateBook(bookDto, id));
         log.info("Updated book: {}", updatedBook);
         return buildBookResponse(updatedBook);
     }
 
     public void deleteBook(Long bookId) {
         log.info("Got 'delete book' request: {}", bookId);
-        BookDto deletedBook = bookService.getBookById(bookId);
-        bookService.deleteBookById(bookId);
+        if (writeBehindQueue != null) {
+            writeBehindQueue.awaitBook(bookId);
+        }
+        BookDto deletedBook = unitOfWork.execute(() -> {
+            BookDto book = bookService.getBookById(bookId);
+            bookService.deleteBookById(bookId);
+            return book;
+        });
         log.info("Deleted book: {}", deletedBook);
     }
 
+    /**
+     * Queued books found before the database is read, a book written meanwhile is found there.
+     */
+    private Map<Long, BookDto> pendingBooks(List<Long> ids) {
+        Map<Long, BookDto> pendingBooks = new HashMap<>();
+        if (writeBehindQueue != null) {
+            for (Long id : ids) {
+                BookDto pendingBook = writeBehindQueue.pendingBook(id);
+                if (pendingBook != null) {
+                    pendingBooks.put(id, pendingBook);
+                }
+            }
+        }
+        return pendingBooks;
+    }
+
+    /**
+     * Called outside the unit of work, the flusher may need the connection it would hold.
+     */
+    private void awaitQueuedBooksOfUser(Long userId) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.awaitUser(userId);
+        }
+    }
+
     BookDto bookFromRequest(BookRequest request) {
         BookDto bookDto = bookMapper.bookRequestToBookDto(request);
         log.info("Mapped book request: {}", bookDto);
@@ -68,15 +229,19 @@ public class BookDataFacade {
     }
 
     BookResponse buildBookResponse(BookDto book) {
-        BookResponse response = BookResponse.builder()
+        BookResponse response = toBookResponse(book);
+        log.info("Book response built: {}", response);
+
+        return response;
+    }
+
+    private static BookResponse toBookResponse(BookDto book) {
+        return BookResponse.builder()
                 .id(book.getId())
                 .userId(book.getUserId())
                 .title(book.getTitle())
                 .author(book.getAuthor())
                 .pageCount(book.getPageCount())
                 .build();
-        log.info("Book response built: {}", response);
-
-        return response;
     }
 }
@@ -0,0 +1,41 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.exception.WrongBookException;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token of the keyset pagination: the last returned id, bound to the user.
+ * A token of one user is rejected for another one.
+ */
+@UtilityClass
+class PageToken {
+    private static final long FIRST_PAGE = 0L;
+    private static final String SEPARATOR = ":";
+
+    String encode(Long userId, long lastId) {
+        String token = userId + SEPARATOR + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the id to continue after, FIRST_PAGE for a missing token.
+     */
+    long decode(Long userId, String token) {
+        if (token == null || token.isEmpty()) {
+            return FIRST_PAGE;
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII)
+                    .split(SEPARATOR);
+            if (parts.length == 2 && Long.parseLong(parts[0]) == userId) {
+                return Long.parseLong(parts[1]);
+            }
+        } catch (IllegalArgumentException exc) {
+            // NumberFormatException is an IllegalArgumentException too
+        }
+        throw new WrongBookException("Page token is not valid for the user");
+    }
+}
@@ -0,0 +1,137 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.exception.WrongBookException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.service.ReactiveBookService;
+import com.edu.ulab.app.util.ReactiveUnitOfWork;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.response.BookPageResponse;
+import com.edu.ulab.app.web.response.BookResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * BookDataFacade of the reactive profile.
+ */
+@Slf4j
+@Component
+@Profile("reactive")
+public class ReactiveBookDataFacade {
+    private final ReactiveBookService bookService;
+    private final BookMapper bookMapper;
+    private final ReactiveUnitOfWork unitOfWork;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+
+    public ReactiveBookDataFacade(ReactiveBookService bookService,
+                                  BookMapper bookMapper,
+                                  ReactiveUnitOfWork unitOfWork,
+                                  @Value("${app.book-page.default-size:100}") int defaultPageSize,
+                                  @Value("${app.book-page.max-size:1000}") int maxPageSize) {
+        this.bookService = bookService;
+        this.bookMapper = bookMapper;
+        this.unitOfWork = unitOfWork;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    public Mono<BookResponse> createBook(BookRequest request) {
+        log.info("Got book request: {}", request);
+        return Mono.defer(() -> bookService.createBook(bookFromRequest(request)))
+                .doOnNext(createdBook -> log.info("Created book: {}", createdBook))
+                .map(this::buildBookResponse);
+    }
+
+    public Mono<BookResponse> getBookById(Long bookId) {
+        log.info("Got book request: {}", bookId);
+        return bookService.getBookById(bookId)
+                .doOnNext(bookDto -> log.info("Book got: {}", bookDto))
+                .map(this::buildBookResponse);
+    }
+
+    /**
+     * Keyset pagination over the books of the user.
+     * One extra book is read to find out whether there is a next page.
+     */
+    public Mono<BookPageResponse> getBooksByUserId(Long userId, String pageToken, Integer size) {
+        log.info("Got 'books of user' page request: userId {}, pageToken {}, size {}", userId, pageToken, size);
+        return Mono.defer(() -> {
+            long afterId = PageToken.decode(userId, pageToken);
+            int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+            if (pageSize < 1) {
+                throw new WrongBookException("Page size must be positive");
+            }
+
+            return bookService.getBooksByUserId(userId, afterId, pageSize + 1)
+                    .collectList()
+                    .map(books -> {
+                        boolean hasNext = books.size() > pageSize;
+                        List<BookDto> page = hasNext ? books.subList(0, pageSize) : books;
+
+                        BookPageResponse response = BookPageResponse.builder()
+                                .books(page.stream().map(ReactiveBookDataFacade::toBookResponse).toList())
+                                .nextPageToken(hasNext ? PageToken.encode(userId, page.get(pageSize - 1).getId()) : null)
+                                .build();
+                        log.info("Books page built: {} books, next page token {}",
+                                page.size(), response.getNextPageToken());
+                        return response;
+                    });
+        });
+    }
+
+    /**
+     * All books of the user after the page token, each one is written as soon as it is read.
+     * The token is checked before anything is written.
+     */
+    public Flux<BookResponse> streamBooksByUserId(Long userId, String pageToken) {
+        log.info("Got 'books of user' stream request: userId {}, pageToken {}", userId, pageToken);
+        long afterId = PageToken.decode(userId, pageToken);
+        return bookService.streamBooksByUserId(userId, afterId)
+                .map(ReactiveBookDataFacade::toBookResponse);
+    }
+
+    public Mono<BookResponse> updateBook(BookRequest request, Long id) {
+        log.info("Got book update request: {}", request);
+        return Mono.defer(() -> unitOfWork.execute(bookService.updateBook(bookFromRequest(request), id)))
+                .doOnNext(updatedBook -> log.info("Updated book: {}", updatedBook))
+                .map(this::buildBookResponse);
+    }
+
+    public Mono<Void> deleteBook(Long bookId) {
+        log.info("Got 'delete book' request: {}", bookId);
+        return unitOfWork.execute(bookService.getBookById(bookId)
+                        .flatMap(book -> bookService.deleteBookById(bookId).thenReturn(book)))
+                .doOnNext(deletedBook -> log.info("Deleted book: {}", deletedBook))
+                .then();
+    }
+
+    BookDto bookFromRequest(BookRequest request) {
+        BookDto bookDto = bookMapper.bookRequestToBookDto(request);
+        log.info("Mapped book request: {}", bookDto);
+        return bookDto;
+    }
+
+    BookResponse buildBookResponse(BookDto book) {
+        BookResponse response = toBookResponse(book);
+        log.info("Book response built: {}", response);
+
+        return response;
+    }
+
+    private static BookResponse toBookResponse(BookDto book) {
+        return BookResponse.builder()
+                .id(book.getId())
+                .userId(book.getUserId())
+                .title(book.getTitle())
+                .author(book.getAuthor())
+                .pageCount(book.getPageCount())
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.ReactiveBookService;
+import com.edu.ulab.app.service.ReactiveUserService;
+import com.edu.ulab.app.util.ReactiveUnitOfWork;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * UserDataFacade of the reactive profile, without import and export.
+ */
+@Slf4j
+@Component
+@Profile("reactive")
+public class ReactiveUserDataFacade {
+    private final ReactiveUserService userService;
+    private final ReactiveBookService bookService;
+    private final UserMapper userMapper;
+    private final BookMapper bookMapper;
+    private final ReactiveUnitOfWork unitOfWork;
+
+    public ReactiveUserDataFacade(ReactiveUserService userService,
+                                  ReactiveBookService bookService,
+                                  UserMapper userMapper,
+                                  BookMapper bookMapper,
+                                  ReactiveUnitOfWork unitOfWork) {
+        this.userService = userService;
+        this.bookService = bookService;
+        this.userMapper = userMapper;
+        this.bookMapper = bookMapper;
+        this.unitOfWork = unitOfWork;
+    }
+
+    public Mono<UserBookResponse> createUserWithBooks(UserBookRequest request) {
+        log.info("Got user book create request: {}", request);
+
+        return Mono.defer(() -> {
+            UserDto userDto = userFromRequest(request);
+            return unitOfWork.execute(userService.createUser(userDto)
+                    .flatMap(createdUser -> {
+                        log.info("Created user: {}", createdUser);
+                        return createBooksFromRequest(request, createdUser.getId())
+                                .map(bookIdList -> buildUserBookResponse(createdUser.getId(), bookIdList));
+                    }));
+        });
+    }
+
+    public Mono<UserBookResponse> updateUserWithBooks(UserBookRequest request, Long userId) {
+        log.info("Got 'user with books' update request: {}", request);
+
+        return Mono.defer(() -> {
+            UserDto userDto = userFromRequest(request);
+            return unitOfWork.execute(userService.updateUser(userDto, userId)
+                    .flatMap(updatedUser -> {
+                        log.info("Updated user: {}", updatedUser);
+                        return bookService.deleteBooksByUserId(userId)
+                                .then(createBooksFromRequest(request, userId))
+                                .map(bookIdList -> buildUserBookResponse(userId, bookIdList));
+                    }));
+        });
+    }
+
+    /**
+     * The user and his book ids come from one query of the user joined to his books,
+     * a user without books is answered with an empty list.
+     */
+    public Mono<UserBookResponse> getUserWithBooks(Long userId) {
+        log.info("Got 'user with books' request: {}", userId);
+
+        return userService.getUserWithBookIds(userId)
+                .map(bookIdList -> buildUserBookResponse(userId, bookIdList));
+    }
+
+    public Mono<Void> deleteUserWithBooks(Long userId) {
+        log.info("Got 'delete user with books' request: {}", userId);
+
+        return unitOfWork.execute(userService.getUserWithBookIds(userId)
+                .flatMap(bookIdList -> userService.deleteUserById(userId)
+                        .then(Mono.fromRunnable(() -> {
+                            log.info("Deleted user: {}", userId);
+                            bookIdList.forEach(deletedBook -> log.info("Deleted book: {}", deletedBook));
+                        }))));
+    }
+
+    UserDto userFromRequest(UserBookRequest request) {
+        UserDto userDto = userMapper.userRequestToUserDto(request.getUserRequest());
+        log.info("Mapped user request: {}", userDto);
+        return userDto;
+    }
+
+    Mono<List<Long>> createBooksFromRequest(UserBookRequest request, Long userId) {
+        List<BookDto> bookList = request.getBookRequests()
+                .stream()
+                .filter(Objects::nonNull)
+                .map(bookRequest -> {
+                    BookDto book = bookMapper.bookRequestToBookDto(bookRequest);
+                    book.setUserId(userId);
+                    log.info("User id set for book: {}", book);
+                    return book;
+                })
+                .toList();
+
+        return bookService.createBooks(bookList)
+                .map(BookDto::getId)
+                .collectList()
+                .doOnNext(bookIdList -> log.info("Created book list: {}", bookIdList));
+    }
+
+    UserBookResponse buildUserBookResponse(Long userId, List<Long> books) {
+        return UserBookResponse.builder()
+                .userId(userId)
+                .booksIdList(books)
+                .build();
+    }
+}
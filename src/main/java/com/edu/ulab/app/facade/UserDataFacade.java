@@ -2,84 +2,232 @@ package com.edu.ulab.app.facade;
 
 import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.WrongUserException;
 import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.mapper.UserMapper;
 import com.edu.ulab.app.service.BookService;
 import com.edu.ulab.app.service.UserService;
-import com.edu.ulab.app.service.impl.BookServiceImplJDBC;
-import com.edu.ulab.app.service.impl.UserServiceImplJDBC;
+import com.edu.ulab.app.service.writebehind.BookWriteBehindQueue;
+import com.edu.ulab.app.util.UnitOfWork;
+import com.edu.ulab.app.util.UserLockManager;
 import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookBatchResponse;
 import com.edu.ulab.app.web.response.UserBookResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @Component
 public class UserDataFacade {
+    private static final int EXPORT_FLUSH_USERS = 1000;
+
     private final UserService userService;
     private final BookService bookService;
     private final UserMapper userMapper;
     private final BookMapper bookMapper;
+    private final UnitOfWork unitOfWork;
+    private final UserLockManager userLocks;
+    private final ObjectMapper objectMapper;
+    private final BookWriteBehindQueue writeBehindQueue;
+    private final int maxIds;
 
-    public UserDataFacade(UserServiceImplJDBC userService,
-                          BookServiceImplJDBC bookService,
+    public UserDataFacade(UserService userService,
+                          BookService bookService,
                           UserMapper userMapper,
-                          BookMapper bookMapper) {
+                          BookMapper bookMapper,
+                          UnitOfWork unitOfWork,
+                          UserLockManager userLocks,
+                          ObjectMapper objectMapper,
+                          ObjectProvider<BookWriteBehindQueue> writeBehindQueue,
+                          @Value("${app.multi-get.max-ids:1000}") int maxIds) {
         this.userService = userService;
         this.bookService = bookService;
         this.userMapper = userMapper;
         this.bookMapper = bookMapper;
+        this.unitOfWork = unitOfWork;
+        this.userLocks = userLocks;
+        this.objectMapper = objectMapper;
+        this.writeBehindQueue = writeBehindQueue.getIfAvailable();
+        this.maxIds = maxIds;
     }
 
     public UserBookResponse createUserWithBooks(UserBookRequest request) {
         log.info("Got user book create request: {}", request);
 
         UserDto userDto = userFromRequest(request);
-        UserDto createdUser = userService.createUser(userDto);
-        log.info("Created user: {}", createdUser);
+        return unitOfWork.execute(() -> {
+            UserDto createdUser = userService.createUser(userDto);
+            log.info("Created user: {}", createdUser);
 
-        List<Long> bookIdList = createBooksFromRequest(request, createdUser.getId());
-        log.info("Collected book ids: {}", bookIdList);
+            List<Long> bookIdList = createBooksFromRequest(request, createdUser.getId());
+            log.info("Collected book ids: {}", bookIdList);
 
-        return buildUserBookResponse(createdUser, bookIdList);
+            return buildUserBookResponse(createdUser, bookIdList);
+        });
     }
 
+    /**
+     * Runs as one unit of work: UPDATE of the user, DELETE of his books and one batched INSERT.
+     * Ids of the new books are taken from the generated keys, nothing is re-selected.
+     * Holds the lock of the user, a concurrent update or delete of the same user waits for the commit.
+     */
     public UserBookResponse updateUserWithBooks(UserBookRequest request, Long userId) {
         log.info("Got 'user with books' update request: {}", request);
 
         UserDto userDto = userFromRequest(request);
-        UserDto updatedUser = userService.updateUser(userDto, userId);
-        log.info("Updated user: {}", updatedUser);
+        checkUserId(userId);
+        awaitQueuedBooksOfUser(userId);
+        return userLocks.withUserLock(userId, () -> unitOfWork.execute(() -> {
+            UserDto updatedUser = userService.updateUser(userDto, userId);
+            log.info("Updated user: {}", updatedUser);
 
-        bookService.deleteBooksByUserId(userId);
-        createBooksFromRequest(request, userId);
-        List<Long> bookIdList = getBooksIdByUser(userId);
+            bookService.deleteBooksByUserId(userId);
+            List<Long> bookIdList = createBooksFromRequest(request, userId);
 
-        return buildUserBookResponse(updatedUser, bookIdList);
+            return buildUserBookResponse(updatedUser, bookIdList);
+        }));
     }
 
+    /**
+     * One query of the user joined to his book ids, no unit of work is needed for a single statement.
+     * A user without books has an empty booksIdList.
+     */
     public UserBookResponse getUserWithBooks(Long userId) {
         log.info("Got 'user with books' request: {}", userId);
+        awaitQueuedBooksOfUser(userId);
+
+        return buildUserBookResponse(userId, userService.getUserWithBookIds(userId));
+    }
 
-        UserDto userDto = userService.getUserById(userId);
-        List<Long> bookIdList = getBooksIdByUser(userId);
+    /**
+     * Users with their book ids from one query of users joined to books per chunk of ids,
+     * instead of two queries per user. Ids without a user are listed in missingIds.
+     */
+    public UserBookBatchResponse getUsersWithBooks(List<Long> userIds) {
+        log.info("Got 'users with books' request: {}", userIds);
+        if (userIds == null || userIds.contains(null)) {
+            throw new WrongUserException("User id is null");
+        }
+        List<Long> ids = userIds.stream().distinct().toList();
+        if (ids.size() > maxIds) {
+            throw new WrongUserException(String.format("At most %d user ids can be requested at once", maxIds));
+        }
 
-        return buildUserBookResponse(userDto, bookIdList);
+        ids.forEach(this::awaitQueuedBooksOfUser);
+        Map<Long, List<Long>> users = unitOfWork.read(() -> userService.getUsersWithBookIds(ids));
+        UserBookBatchResponse response = UserBookBatchResponse.builder()
+                .users(ids.stream()
+                        .filter(users::containsKey)
+                        .map(id -> buildUserBookResponse(id, users.get(id)))
+                        .toList())
+                .missingIds(ids.stream().filter(id -> !users.containsKey(id)).toList())
+                .build();
+        log.info("Users found: {}, missing: {}", response.getUsers().size(), response.getMissingIds());
+        return response;
     }
 
+    /**
+     * Holds the lock of the user, like updateUserWithBooks.
+     */
     public void deleteUserWithBooks(Long userId) {
         log.info("Got 'delete user with books' request: {}", userId);
+        checkUserId(userId);
+        awaitQueuedBooksOfUser(userId);
+
+        userLocks.withUserLock(userId, () -> unitOfWork.run(() -> {
+            List<Long> bookIdList = userService.getUserWithBookIds(userId);
+
+            userService.deleteUserById(userId);
+            log.info("Deleted user: {}", userId);
+
+            bookIdList.forEach(deletedBook -> log.info("Deleted book: {}", deletedBook));
+        }));
+    }
+
+    /**
+     * Writes every user with id greater than afterUserId as one NDJSON line of user id and book ids,
+     * in user id order, from one read-only cursor over users joined to books.
+     * The output is flushed every EXPORT_FLUSH_USERS users, with gzip as a sync flush,
+     * so an interrupted export can be resumed from the userId of the last complete line.
+     * The gzip stream is finished only after the last user, a failed read leaves it open
+     * and aborts the response, so a truncated export never looks complete.
+     * Queued books are awaited in the body, on the async executor instead of the request thread.
+     */
+    public StreamingResponseBody exportUsersWithBooks(long afterUserId, boolean gzip) {
+        log.info("Got 'export users with books' request: afterUserId {}, gzip {}", afterUserId, gzip);
+        return out -> {
+            if (writeBehindQueue != null) {
+                writeBehindQueue.awaitAll();
+            }
+            OutputStream target = gzip ? new GZIPOutputStream(out, true) : out;
+            long exported = unitOfWork.read(() -> {
+                try (JsonGenerator generator = objectMapper.getFactory().createGenerator(target)) {
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    generator.setRootValueSeparator(new SerializedString("\n"));
+                    long[] count = new long[1];
+                    userService.forEachUserWithBookIds(afterUserId, (userId, bookIds) -> {
+                        writeLine(generator, buildUserBookResponse(userId, bookIds));
+                        if (++count[0] % EXPORT_FLUSH_USERS == 0) {
+                            flush(generator);
+                        }
+                    });
+                    if (count[0] > 0) {
+                        generator.writeRaw('\n');
+                    }
+                    return count[0];
+                } catch (IOException exc) {
+                    throw new UncheckedIOException(exc);
+                }
+            });
+            target.close();
+            log.info("Users exported after id {}: {}", afterUserId, exported);
+        };
+    }
+
+    private static void writeLine(JsonGenerator generator, UserBookResponse response) {
+        try {
+            generator.writeObject(response);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
 
-        UserDto deletedUser = userService.getUserById(userId);
-        List<Long> bookIdList = getBooksIdByUser(userId);
+    private static void flush(JsonGenerator generator) {
+        try {
+            generator.flush();
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
 
-        userService.deleteUserById(userId);
-        log.info("Deleted user: {}", deletedUser);
+    private static void checkUserId(Long userId) {
+        if (userId == null) {
+            throw new WrongUserException("User id is null");
+        }
+    }
 
-        bookIdList.forEach(deletedBook -> log.info("Deleted book: {}", deletedBook));
+    /**
+     * Books queued by BookDataFacade are written first, outside the unit of work:
+     * the flusher may need the connection it would hold.
+     */
+    private void awaitQueuedBooksOfUser(Long userId) {
+        if (writeBehindQueue != null) {
+            writeBehindQueue.awaitUser(userId);
+        }
     }
 
     UserDto userFromRequest(UserBookRequest request) {
@@ -89,33 +237,32 @@ public class UserDataFacade {
     }
 
     List<Long> createBooksFromRequest(UserBookRequest request, Long userId) {
-        request.getBookRequests()
+        List<BookDto> bookList = request.getBookRequests()
                 .stream()
                 .filter(Objects::nonNull)
-                .map(bookMapper::bookRequestToBookDto)
-                .forEach(book -> {
+                .map(bookRequest -> {
+                    BookDto book = bookMapper.bookRequestToBookDto(bookRequest);
                     book.setUserId(userId);
                     log.info("User id set for book: {}", book);
-                    bookService.createBook(book);
-                    log.info("Created book: {}", book);
-                });
-
-        List<Long> bookIdList = getBooksIdByUser(userId);
-        log.info("Created book list: {}", bookIdList);
-        return bookIdList;
-    }
+                    return book;
+                })
+                .toList();
 
-    List<Long> getBooksIdByUser(Long userId) {
-        return bookService.getBooksByUserId(userId)
+        List<Long> bookIdList = bookService.createBooks(bookList)
                 .stream()
-                .filter(Objects::nonNull)
                 .map(BookDto::getId)
                 .toList();
+        log.info("Created book list: {}", bookIdList);
+        return bookIdList;
     }
 
     UserBookResponse buildUserBookResponse(UserDto user, List<Long> books) {
+        return buildUserBookResponse(user.getId(), books);
+    }
+
+    UserBookResponse buildUserBookResponse(Long userId, List<Long> books) {
         return UserBookResponse.builder()
-                .userId(user.getId())
+                .userId(userId)
                 .booksIdList(books)
                 .build();
     }
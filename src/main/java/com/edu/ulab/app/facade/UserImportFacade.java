@@ -0,0 +1,332 @@
+package com.edu.ulab.app.facade;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.WrongUserException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.util.UnitOfWork;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserImportResponse;
+import com.edu.ulab.app.web.response.UserImportSummaryResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk import of users with books from an NDJSON or JSON array upload.
+ * <p>
+ * Records are parsed one at a time and inserted in batches of batchSize records, one transaction per batch.
+ * The upload is read only as fast as the batches are written, so a fast client is slowed down by TCP flow control
+ * and at most one batch is held in memory.
+ * If a batch fails, its records are retried one by one to find the rejected ones.
+ * <p>
+ * The response is NDJSON: one line per record with the generated ids or the error, flushed after every batch,
+ * and a summary line with the import rate in records per second.
+ */
+@Slf4j
+@Component
+public class UserImportFacade {
+    private final UserService userService;
+    private final BookService bookService;
+    private final UserMapper userMapper;
+    private final BookMapper bookMapper;
+    private final UnitOfWork unitOfWork;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader requestReader;
+    private final int batchSize;
+
+    private final Counter createdRecords;
+    private final Counter failedRecords;
+    private final Timer batchTimer;
+
+    public UserImportFacade(UserService userService,
+                            BookService bookService,
+                            UserMapper userMapper,
+                            BookMapper bookMapper,
+                            UnitOfWork unitOfWork,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.import.batch-size:500}") int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("app.import.batch-size must be positive");
+        }
+        this.userService = userService;
+        this.bookService = bookService;
+        this.userMapper = userMapper;
+        this.bookMapper = bookMapper;
+        this.unitOfWork = unitOfWork;
+        this.objectMapper = objectMapper;
+        this.requestReader = objectMapper.readerFor(UserBookRequest.class);
+        this.batchSize = batchSize;
+
+        this.createdRecords = Counter.builder("user.import.records")
+                .tag("result", "created")
+                .description("Imported users with their books")
+                .register(meterRegistry);
+        this.failedRecords = Counter.builder("user.import.records")
+                .tag("result", "failed")
+                .description("Import records rejected by parsing or by the database")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("user.import.batch")
+                .description("Insert of one import batch")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The JSON array is checked to start with '[' before anything is written.
+     * Broken JSON syntax in an array stops the import, in NDJSON only the broken line is rejected.
+     */
+    public void importUsersWithBooks(InputStream in, OutputStream out, boolean jsonArray) {
+        try {
+            RecordSource source = jsonArray ? arraySource(in) : ndjsonSource(in);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                importRecords(source, generator);
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    private void importRecords(RecordSource source, JsonGenerator generator) throws IOException {
+        long started = System.nanoTime();
+        long records = 0;
+        long failed = 0;
+
+        List<ParsedRecord> batch = new ArrayList<>(batchSize);
+        ParsedRecord record;
+        while ((record = source.next()) != null) {
+            records++;
+            if (record.error() != null) {
+                failed++;
+                failedRecords.increment();
+                generator.writeObject(errorResponse(record.index(), record.error()));
+                continue;
+            }
+            batch.add(record);
+            if (batch.size() == batchSize) {
+                failed += writeBatch(batch, generator);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            failed += writeBatch(batch, generator);
+        }
+
+        long elapsedNanos = System.nanoTime() - started;
+        UserImportSummaryResponse summary = UserImportSummaryResponse.builder()
+                .records(records)
+                .created(records - failed)
+                .failed(failed)
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .recordsPerSecond(elapsedNanos == 0 ? 0 : records * 1e9 / elapsedNanos)
+                .build();
+        generator.writeObject(summary);
+        generator.writeRaw('\n');
+        log.info("Import finished: {}", summary);
+    }
+
+    /**
+     * Returns the number of rejected records.
+     */
+    private int writeBatch(List<ParsedRecord> batch, JsonGenerator generator) throws IOException {
+        List<UserImportResponse> responses;
+        long started = System.nanoTime();
+        try {
+            responses = unitOfWork.execute(() -> insertRecords(batch));
+        } catch (RuntimeException exc) {
+            log.warn("Import batch of {} records failed, retrying one by one: {}", batch.size(), exc.getMessage());
+            responses = batch.stream().map(this::importRecord).toList();
+        }
+        batchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+        int failed = 0;
+        for (UserImportResponse response : responses) {
+            if (response.getError() != null) {
+                failed++;
+            }
+            generator.writeObject(response);
+        }
+        generator.flush();
+
+        createdRecords.increment(batch.size() - failed);
+        failedRecords.increment(failed);
+        log.info("Import batch written: {} records, {} failed", batch.size(), failed);
+        return failed;
+    }
+
+    private UserImportResponse importRecord(ParsedRecord record) {
+        try {
+            return unitOfWork.execute(() -> insertRecords(List.of(record))).get(0);
+        } catch (RuntimeException exc) {
+            return errorResponse(record.index(), exc.getMessage());
+        }
+    }
+
+    /**
+     * Inserts the users in one batch, then the books of all of them in one batch.
+     * A failed insert throws, so the unit of work is rolled back.
+     */
+    private List<UserImportResponse> insertRecords(List<ParsedRecord> records) {
+        List<UserDto> users = records.stream()
+                .map(record -> userMapper.userRequestToUserDto(record.request().getUserRequest()))
+                .toList();
+        List<UserDto> createdUsers = userService.createUsers(users);
+
+        List<BookDto> books = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            Long userId = createdUsers.get(i).getId();
+            for (BookRequest bookRequest : booksOf(records.get(i))) {
+                BookDto book = bookMapper.bookRequestToBookDto(bookRequest);
+                book.setUserId(userId);
+                books.add(book);
+            }
+        }
+        List<BookDto> createdBooks = books.isEmpty() ? books : bookService.createBooks(books);
+
+        List<UserImportResponse> responses = new ArrayList<>(records.size());
+        int from = 0;
+        for (int i = 0; i < records.size(); i++) {
+            int to = from + booksOf(records.get(i)).size();
+            List<Long> bookIdList = createdBooks.subList(from, to)
+                    .stream()
+                    .map(BookDto::getId)
+                    .toList();
+            responses.add(UserImportResponse.builder()
+                    .index(records.get(i).index())
+                    .userId(createdUsers.get(i).getId())
+                    .booksIdList(bookIdList)
+                    .build());
+            from = to;
+        }
+        return responses;
+    }
+
+    private static List<BookRequest> booksOf(ParsedRecord record) {
+        List<BookRequest> bookRequests = record.request().getBookRequests();
+        return bookRequests == null
+                ? List.of()
+                : bookRequests.stream().filter(Objects::nonNull).toList();
+    }
+
+    private static UserImportResponse errorResponse(long index, String error) {
+        return UserImportResponse.builder()
+                .index(index)
+                .error(error)
+                .build();
+    }
+
+    private static ParsedRecord checked(long index, UserBookRequest request) {
+        if (request == null || request.getUserRequest() == null) {
+            return new ParsedRecord(index, null, "User is null");
+        }
+        return new ParsedRecord(index, request, null);
+    }
+
+    /**
+     * One JSON document per line, blank lines are skipped.
+     */
+    private RecordSource ndjsonSource(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return new RecordSource() {
+            private long index;
+
+            @Override
+            public ParsedRecord next() throws IOException {
+                String line;
+                do {
+                    line = reader.readLine();
+                    if (line == null) {
+                        return null;
+                    }
+                } while (line.isBlank());
+
+                long recordIndex = index++;
+                try {
+                    return checked(recordIndex, requestReader.readValue(line));
+                } catch (JsonProcessingException exc) {
+                    return new ParsedRecord(recordIndex, null, exc.getOriginalMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * Elements of a top-level array. Each element is read as a tree first,
+     * so an element of the wrong shape is rejected alone and the parser stays on the element boundary.
+     */
+    private RecordSource arraySource(InputStream in) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new WrongUserException("Import body must be a JSON array");
+        }
+        return new RecordSource() {
+            private long index;
+            private boolean finished;
+
+            @Override
+            public ParsedRecord next() throws IOException {
+                if (finished) {
+                    return null;
+                }
+                long recordIndex = index;
+                JsonNode element;
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (token == null || token == JsonToken.END_ARRAY) {
+                        finished = true;
+                        return null;
+                    }
+                    element = parser.readValueAsTree();
+                } catch (JsonParseException exc) {
+                    finished = true;
+                    return new ParsedRecord(recordIndex, null, "Import stopped: " + exc.getOriginalMessage());
+                }
+                index++;
+                try {
+                    return checked(recordIndex, requestReader.treeToValue(element, UserBookRequest.class));
+                } catch (JsonProcessingException exc) {
+                    return new ParsedRecord(recordIndex, null, exc.getOriginalMessage());
+                }
+            }
+        };
+    }
+
+    private interface RecordSource {
+        /**
+         * Returns null at the end of the upload.
+         */
+        ParsedRecord next() throws IOException;
+    }
+
+    private record ParsedRecord(long index, UserBookRequest request, String error) {
+    }
+}
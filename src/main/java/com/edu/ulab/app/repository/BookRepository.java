@@ -1,20 +1,53 @@
 package com.edu.ulab.app.repository;
 
 import com.edu.ulab.app.entity.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface BookRepository extends CrudRepository<Book, Long> {
 
     @Query("select b from Book b where b.id = :id")
     Optional<Book> findByIdForUpdate(long id);
 
+    List<Book> findByIdInOrderById(Collection<Long> ids);
+
+    /**
+     * Cached in the booksByUser query region when the second-level cache is enabled.
+     * Any write to BOOK invalidates the cached results of every user.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = "booksByUser")})
     List<Book> findBooksByUserId(long id);
 
+    List<Book> findByUserIdAndIdGreaterThanOrderById(long userId, long afterId, Pageable pageable);
+
+    /**
+     * Has to be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Book> streamByUserIdAndIdGreaterThanOrderById(long userId, long afterId);
+
+    /**
+     * One DELETE statement, the derived deleteBy query would load every book and remove them one by one.
+     * Pending changes are flushed first, books of the user already in the persistence context are not evicted.
+     */
     @Transactional
-    void deleteBooksByUserId(long id);
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Book b where b.userId = :userId")
+    int deleteBooksByUserId(long userId);
 }
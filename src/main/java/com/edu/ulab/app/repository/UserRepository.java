@@ -1,10 +1,21 @@
 package com.edu.ulab.app.repository;
 
 import com.edu.ulab.app.entity.Person;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 public interface UserRepository extends CrudRepository<Person, Long> {
 
@@ -14,6 +25,37 @@ public interface UserRepository extends CrudRepository<Person, Long> {
     User has books - book - finished
      */
 
+    /**
+     * SELECT ... FOR UPDATE, the row stays locked until the transaction ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select p from Person p where p.id = :id")
     Optional<Person> findByIdForUpdate(long id);
+
+    /**
+     * Ids of the books of the user, a single null for a user without books, none without the user.
+     * Cached in the bookIdsOfUser query region when the second-level cache is enabled,
+     * any write to PERSON or BOOK invalidates the cached results of every user.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HINT_CACHE_REGION, value = "bookIdsOfUser")})
+    @Query("select b.id from Person p left join Book b on b.userId = p.id where p.id = :userId order by b.id")
+    List<Long> findBookIdsOfUser(long userId);
+
+    /**
+     * Rows of user id and book id, the book id is null for a user without books.
+     * Has to be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("select p.id, b.id from Person p left join Book b on b.userId = p.id "
+            + "where p.id > :afterUserId order by p.id, b.id")
+    Stream<Object[]> streamUserBookIds(long afterUserId);
+
+    /**
+     * Rows of user id and book id of the given users, as in streamUserBookIds.
+     */
+    @Query("select p.id, b.id from Person p left join Book b on b.userId = p.id "
+            + "where p.id in :userIds order by p.id, b.id")
+    List<Object[]> findUserBookIds(Collection<Long> userIds);
 }
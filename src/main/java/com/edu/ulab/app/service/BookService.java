@@ -5,17 +5,58 @@ import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.exception.WrongBookException;
 import com.edu.ulab.app.exception.WrongUserException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface BookService {
+    /**
+     * Ids handed out by one reserveBookIds call, the increment of BOOK_SEQ.
+     */
+    int BOOK_ID_BLOCK_SIZE = 50;
+
     BookDto createBook(BookDto bookDto);
 
+    /**
+     * Creates all books in one transaction.
+     * Returns the books with generated ids, in the order of the given list.
+     */
+    List<BookDto> createBooks(List<BookDto> bookDtoList);
+
+    /**
+     * Reserves BOOK_ID_BLOCK_SIZE consecutive ids for createBooksWithIds and returns the first one.
+     * The ids are never handed out to another caller.
+     */
+    long reserveBookIds();
+
+    /**
+     * Creates all books in one transaction under the ids they carry, reserved with reserveBookIds.
+     */
+    List<BookDto> createBooksWithIds(List<BookDto> bookDtoList);
+
     BookDto updateBook(BookDto bookDto, Long id);
 
     BookDto getBookById(Long id);
 
+    /**
+     * Returns the existing books of ids in id order, unknown ids are left out instead of failing.
+     */
+    List<BookDto> getBooksByIds(Collection<Long> ids);
+
     List<BookDto> getBooksByUserId(Long userId);
 
+    /**
+     * Keyset page: up to limit books of the user with id greater than afterId, ordered by id.
+     * Unlike getBooksByUserId returns an empty list when there are no more books.
+     */
+    List<BookDto> getBooksByUserId(Long userId, long afterId, int limit);
+
+    /**
+     * Passes books of the user with id greater than afterId to the action in id order,
+     * one by one without collecting them into a list.
+     */
+    void forEachBookByUserId(Long userId, long afterId, Consumer<BookDto> action);
+
     void deleteBookById(Long id);
 
     void deleteBooksByUserId(Long id);
@@ -25,12 +66,36 @@ public interface BookService {
             throw new WrongBookException("Book id is null");
         }
     }
+    default void checkBookIdsForNull(Collection<Long> ids) {
+        if (ids == null || ids.contains(null)) {
+            throw new WrongBookException("Book id is null");
+        }
+    }
+
     default void checkBookDtoForNull(BookDto bookDto) {
         if (bookDto == null) {
             throw new WrongBookException("Book is null");
         }
     }
 
+    default void checkBookListForNull(List<BookDto> bookDtoList) {
+        if (bookDtoList == null) {
+            throw new WrongBookException("Book list is null");
+        }
+        bookDtoList.forEach(this::checkBookDtoForNull);
+    }
+
+    default void checkBookIdsSet(List<BookDto> bookDtoList) {
+        checkBookListForNull(bookDtoList);
+        bookDtoList.forEach(bookDto -> checkBookIdForNull(bookDto.getId()));
+    }
+
+    default void checkPageLimit(int limit) {
+        if (limit < 1) {
+            throw new WrongBookException("Page size must be positive");
+        }
+    }
+
     default void checkUserIdForNull(Long id) {
         if (id == null) {
             throw new WrongUserException("User id is null");
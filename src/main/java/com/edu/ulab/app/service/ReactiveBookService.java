@@ -0,0 +1,75 @@
+package com.edu.ulab.app.service;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.exception.WrongBookException;
+import com.edu.ulab.app.exception.WrongUserException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of BookService, the checks fail the returned publisher instead of throwing.
+ */
+public interface ReactiveBookService {
+    Mono<BookDto> createBook(BookDto bookDto);
+
+    /**
+     * Emits the books with generated ids, in the order of the given list.
+     */
+    Flux<BookDto> createBooks(List<BookDto> bookDtoList);
+
+    Mono<BookDto> updateBook(BookDto bookDto, Long id);
+
+    Mono<BookDto> getBookById(Long id);
+
+    /**
+     * Fails with NotFoundException when the user has no books, like BookService.getBooksByUserId.
+     */
+    Flux<BookDto> getBooksByUserId(Long userId);
+
+    /**
+     * Keyset page: up to limit books of the user with id greater than afterId, ordered by id.
+     */
+    Flux<BookDto> getBooksByUserId(Long userId, long afterId, int limit);
+
+    /**
+     * All books of the user with id greater than afterId in id order, emitted as they are read.
+     */
+    Flux<BookDto> streamBooksByUserId(Long userId, long afterId);
+
+    Mono<Void> deleteBookById(Long id);
+
+    Mono<Void> deleteBooksByUserId(Long id);
+
+    default void checkBookIdForNull(Long id) {
+        if (id == null) {
+            throw new WrongBookException("Book id is null");
+        }
+    }
+
+    default void checkBookDtoForNull(BookDto bookDto) {
+        if (bookDto == null) {
+            throw new WrongBookException("Book is null");
+        }
+    }
+
+    default void checkBookListForNull(List<BookDto> bookDtoList) {
+        if (bookDtoList == null) {
+            throw new WrongBookException("Book list is null");
+        }
+        bookDtoList.forEach(this::checkBookDtoForNull);
+    }
+
+    default void checkPageLimit(int limit) {
+        if (limit < 1) {
+            throw new WrongBookException("Page size must be positive");
+        }
+    }
+
+    default void checkUserIdForNull(Long id) {
+        if (id == null) {
+            throw new WrongUserException("User id is null");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.edu.ulab.app.service;
+
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.WrongUserException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of UserService, the checks fail the returned Mono instead of throwing.
+ */
+public interface ReactiveUserService {
+    Mono<UserDto> createUser(UserDto userDto);
+
+    Mono<UserDto> updateUser(UserDto userDto, Long id);
+
+    /**
+     * Fails with NotFoundException when there is no such user.
+     */
+    Mono<UserDto> getUserById(Long id);
+
+    /**
+     * Emits the ids of the books of the user in id order, empty for a user without books,
+     * from one query of the user joined to his books. Fails with NotFoundException when there is no such user.
+     */
+    Mono<List<Long>> getUserWithBookIds(Long id);
+
+    Mono<Void> deleteUserById(Long id);
+
+    default void checkUserIdForNull(Long id) {
+        if (id == null) {
+            throw new WrongUserException("User id is null");
+        }
+    }
+
+    default void checkUserDtoForNull(UserDto userDto) {
+        if (userDto == null) {
+            throw new WrongUserException("User is null");
+        }
+    }
+}
@@ -4,16 +4,50 @@ import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.exception.WrongUserException;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
 @Repository
 public interface UserService {
+    /**
+     * Ids in one block of PERSON_SEQ, its increment.
+     */
+    int USER_ID_BLOCK_SIZE = 50;
+
     UserDto createUser(UserDto userDto);
 
+    /**
+     * Creates all users in one transaction.
+     * Returns the users with generated ids, in the order of the given list.
+     */
+    List<UserDto> createUsers(List<UserDto> userDtoList);
+
     UserDto updateUser(UserDto userDto, Long id);
 
     UserDto getUserById(Long id);
 
+    /**
+     * Returns the ids of the books of the user in id order, empty for a user without books,
+     * from one query of the user joined to his books. Fails with NotFoundException when there is no such user.
+     */
+    List<Long> getUserWithBookIds(Long id);
+
     void deleteUserById(Long id);
 
+    /**
+     * Passes every user with id greater than afterUserId to the action in id order,
+     * together with the ids of his books in id order, without collecting the users into a list.
+     */
+    void forEachUserWithBookIds(long afterUserId, BiConsumer<Long, List<Long>> action);
+
+    /**
+     * Returns the ids of the books of every existing user of userIds by user id, both in id order,
+     * a user without books has an empty list. Unknown ids are left out instead of failing.
+     */
+    Map<Long, List<Long>> getUsersWithBookIds(Collection<Long> userIds);
+
     default void checkUserIdForNull(Long id) {
         if (id == null) {
             throw new WrongUserException("User id is null");
@@ -25,4 +59,17 @@ public interface UserService {
             throw new WrongUserException("User is null");
         }
     }
+
+    default void checkUserIdsForNull(Collection<Long> userIds) {
+        if (userIds == null || userIds.contains(null)) {
+            throw new WrongUserException("User id is null");
+        }
+    }
+
+    default void checkUserListForNull(List<UserDto> userDtoList) {
+        if (userDtoList == null) {
+            throw new WrongUserException("User list is null");
+        }
+        userDtoList.forEach(this::checkUserDtoForNull);
+    }
 }
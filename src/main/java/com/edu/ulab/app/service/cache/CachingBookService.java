@@ -0,0 +1,152 @@
+package com.edu.ulab.app.service.cache;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.service.BookService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.function.Consumer;
+
+/**
+ * Write-through read cache in front of any BookService implementation.
+ * Keeps single books and book lists per user, any change of a book invalidates the list of its user.
+ */
+@Slf4j
+public class CachingBookService implements BookService {
+    private final BookService delegate;
+    private final ServiceCache cache;
+
+    public CachingBookService(BookService delegate, ServiceCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public BookDto createBook(BookDto bookDto) {
+        BookDto createdBook = delegate.createBook(bookDto);
+        invalidateBookList(createdBook.getUserId());
+        ServiceCache.afterCommit(() -> cache.books().put(createdBook.getId(), createdBook));
+        return createdBook;
+    }
+
+    @Override
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        List<BookDto> createdBooks = delegate.createBooks(bookDtoList);
+        createdBooks.stream()
+                .map(BookDto::getUserId)
+                .distinct()
+                .forEach(this::invalidateBookList);
+        ServiceCache.afterCommit(() -> createdBooks.forEach(book -> cache.books().put(book.getId(), book)));
+        return createdBooks;
+    }
+
+    @Override
+    public long reserveBookIds() {
+        return delegate.reserveBookIds();
+    }
+
+    @Override
+    public List<BookDto> createBooksWithIds(List<BookDto> bookDtoList) {
+        List<BookDto> createdBooks = delegate.createBooksWithIds(bookDtoList);
+        createdBooks.stream()
+                .map(BookDto::getUserId)
+                .distinct()
+                .forEach(this::invalidateBookList);
+        ServiceCache.afterCommit(() -> createdBooks.forEach(book -> cache.books().put(book.getId(), book)));
+        return createdBooks;
+    }
+
+    @Override
+    public BookDto updateBook(BookDto bookDto, Long bookId) {
+        checkBookIdForNull(bookId);
+        ServiceCache.invalidateNowAndAfterCompletion(() -> cache.books().invalidate(bookId));
+        BookDto updatedBook = delegate.updateBook(bookDto, bookId);
+        invalidateBookList(updatedBook.getUserId());
+        ServiceCache.afterCommit(() -> cache.books().put(bookId, updatedBook));
+        return updatedBook;
+    }
+
+    @Override
+    public BookDto getBookById(Long bookId) {
+        checkBookIdForNull(bookId);
+        return cache.books().get(bookId, delegate::getBookById);
+    }
+
+    /**
+     * Books missing from the cache are loaded with one call of the delegate and cached.
+     */
+    @Override
+    public List<BookDto> getBooksByIds(Collection<Long> ids) {
+        checkBookIdsForNull(ids);
+        return cache.books().getAll(ids, missingIds -> {
+                    List<Long> idList = new ArrayList<>();
+                    missingIds.forEach(idList::add);
+                    return delegate.getBooksByIds(idList)
+                            .stream()
+                            .collect(Collectors.toMap(BookDto::getId, Function.identity()));
+                })
+                .values()
+                .stream()
+                .sorted(Comparator.comparing(BookDto::getId))
+                .toList();
+    }
+
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId) {
+        checkUserIdForNull(userId);
+        return cache.booksByUser().get(userId, id -> List.copyOf(delegate.getBooksByUserId(id)));
+    }
+
+    /**
+     * Pages are not cached, a page is read once per client.
+     */
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId, long afterId, int limit) {
+        return delegate.getBooksByUserId(userId, afterId, limit);
+    }
+
+    @Override
+    public void forEachBookByUserId(Long userId, long afterId, Consumer<BookDto> action) {
+        delegate.forEachBookByUserId(userId, afterId, action);
+    }
+
+    /**
+     * The owner of the book is taken from the cache, if the book is not cached,
+     * every cached book list is dropped instead of selecting the book.
+     */
+    @Override
+    public void deleteBookById(Long bookId) {
+        checkBookIdForNull(bookId);
+        BookDto cachedBook = cache.books().getIfPresent(bookId);
+        delegate.deleteBookById(bookId);
+        ServiceCache.invalidateNowAndAfterCompletion(() -> {
+            cache.books().invalidate(bookId);
+            if (cachedBook != null) {
+                cache.booksByUser().invalidate(cachedBook.getUserId());
+            } else {
+                cache.booksByUser().invalidateAll();
+            }
+        });
+    }
+
+    @Override
+    public void deleteBooksByUserId(Long userId) {
+        checkUserIdForNull(userId);
+        List<BookDto> cachedBooks = cache.booksByUser().getIfPresent(userId);
+        delegate.deleteBooksByUserId(userId);
+        ServiceCache.invalidateNowAndAfterCompletion(() -> cache.invalidateBooksOfUser(userId, cachedBooks));
+        log.info("Books of the user evicted from cache: {}", userId);
+    }
+
+    private void invalidateBookList(Long userId) {
+        if (Objects.nonNull(userId)) {
+            ServiceCache.invalidateNowAndAfterCompletion(() -> cache.booksByUser().invalidate(userId));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.edu.ulab.app.service.cache;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Write-through read cache in front of any UserService implementation.
+ * Created and updated users are put into the cache after commit, deletes invalidate it.
+ * Deleting a user also drops his cached books.
+ */
+@Slf4j
+public class CachingUserService implements UserService {
+    private final UserService delegate;
+    private final ServiceCache cache;
+
+    public CachingUserService(UserService delegate, ServiceCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public UserDto createUser(UserDto userDto) {
+        UserDto createdUser = delegate.createUser(userDto);
+        ServiceCache.afterCommit(() -> cache.users().put(createdUser.getId(), createdUser));
+        return createdUser;
+    }
+
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        List<UserDto> createdUsers = delegate.createUsers(userDtoList);
+        ServiceCache.afterCommit(() -> createdUsers.forEach(user -> cache.users().put(user.getId(), user)));
+        return createdUsers;
+    }
+
+    @Override
+    public UserDto updateUser(UserDto userDto, Long userId) {
+        checkUserIdForNull(userId);
+        ServiceCache.invalidateNowAndAfterCompletion(() -> cache.users().invalidate(userId));
+        UserDto updatedUser = delegate.updateUser(userDto, userId);
+        ServiceCache.afterCommit(() -> cache.users().put(userId, updatedUser));
+        return updatedUser;
+    }
+
+    @Override
+    public UserDto getUserById(Long userId) {
+        checkUserIdForNull(userId);
+        return cache.users().get(userId, delegate::getUserById);
+    }
+
+    /**
+     * Served from the cached book list of the user if there is one, otherwise by one query of the delegate.
+     */
+    @Override
+    public List<Long> getUserWithBookIds(Long userId) {
+        checkUserIdForNull(userId);
+        List<BookDto> cachedBooks = cache.booksByUser().getIfPresent(userId);
+        if (cachedBooks != null) {
+            return cachedBooks.stream().map(BookDto::getId).sorted().toList();
+        }
+        return delegate.getUserWithBookIds(userId);
+    }
+
+    @Override
+    public void deleteUserById(Long userId) {
+        checkUserIdForNull(userId);
+        List<BookDto> cachedBooks = cache.booksByUser().getIfPresent(userId);
+        delegate.deleteUserById(userId);
+        ServiceCache.invalidateNowAndAfterCompletion(() -> {
+            cache.users().invalidate(userId);
+            cache.invalidateBooksOfUser(userId, cachedBooks);
+        });
+        log.info("User evicted from cache: {}", userId);
+    }
+
+    @Override
+    public void forEachUserWithBookIds(long afterUserId, BiConsumer<Long, List<Long>> action) {
+        delegate.forEachUserWithBookIds(afterUserId, action);
+    }
+
+    /**
+     * Book ids of users are not cached, one query of the delegate is cheaper than a lookup per user.
+     */
+    @Override
+    public Map<Long, List<Long>> getUsersWithBookIds(Collection<Long> userIds) {
+        return delegate.getUsersWithBookIds(userIds);
+    }
+}
@@ -0,0 +1,108 @@
+package com.edu.ulab.app.service.cache;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.dto.UserDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Caches shared by CachingUserService and CachingBookService,
+ * so deleting a user also drops his cached books.
+ * Size-bounded with Caffeine's W-TinyLFU eviction, optionally expiring after write.
+ * Cached DTOs are shared between callers and must not be modified.
+ */
+public class ServiceCache {
+    private final Cache<Long, UserDto> users;
+    private final Cache<Long, BookDto> books;
+    private final Cache<Long, List<BookDto>> booksByUser;
+
+    public ServiceCache(long maximumSize, Duration expireAfterWrite) {
+        this.users = newCache(maximumSize, expireAfterWrite);
+        this.books = newCache(maximumSize, expireAfterWrite);
+        this.booksByUser = newCache(maximumSize, expireAfterWrite);
+    }
+
+    private static <V> Cache<Long, V> newCache(long maximumSize, Duration expireAfterWrite) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats();
+        if (!expireAfterWrite.isZero()) {
+            builder.expireAfterWrite(expireAfterWrite);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Exposes size, hit, miss and eviction counts of every cache.
+     */
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, users, "service.users");
+        CaffeineCacheMetrics.monitor(registry, books, "service.books");
+        CaffeineCacheMetrics.monitor(registry, booksByUser, "service.booksByUser");
+    }
+
+    Cache<Long, UserDto> users() {
+        return users;
+    }
+
+    Cache<Long, BookDto> books() {
+        return books;
+    }
+
+    Cache<Long, List<BookDto>> booksByUser() {
+        return booksByUser;
+    }
+
+    /**
+     * Uses the book list of the user taken from the cache before the change, if there was one,
+     * otherwise scans the book cache.
+     */
+    void invalidateBooksOfUser(Long userId, List<BookDto> knownBooks) {
+        booksByUser.invalidate(userId);
+        if (knownBooks != null) {
+            knownBooks.forEach(book -> books.invalidate(book.getId()));
+        } else {
+            books.asMap().values().removeIf(book -> userId.equals(book.getUserId()));
+        }
+    }
+
+    /**
+     * Changes made inside a transaction become visible to other readers only after commit,
+     * so cache writes are deferred until then, and dropped on rollback.
+     */
+    static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Invalidates now and once more after the transaction ends,
+     * in case a concurrent reader cached the old row in between.
+     */
+    static void invalidateNowAndAfterCompletion(Runnable invalidation) {
+        invalidation.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidation.run();
+                }
+            });
+        }
+    }
+}
@@ -7,10 +7,19 @@ import com.edu.ulab.app.mapper.BookMapper;
 import com.edu.ulab.app.repository.BookRepository;
 import com.edu.ulab.app.service.BookService;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.query.NativeQuery;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * ORM implementation.
@@ -20,13 +29,20 @@ import java.util.Objects;
 @Slf4j
 @Service
 public class BookServiceImpl implements BookService {
+    private static final int MULTI_GET_CHUNK_SIZE = 500;
+    private static final int INSERT_CHUNK_SIZE = 100;
+    private static final String RESERVE_BOOK_IDS_SQL = "SELECT NEXT VALUE FOR BOOK_SEQ";
+    private static final String INSERT_BOOKS_WITH_IDS =
+            "INSERT INTO BOOK(ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES ";
 
     private final BookRepository bookRepository;
     private final BookMapper bookMapper;
+    private final EntityManager entityManager;
 
-    public BookServiceImpl(BookRepository bookRepository, BookMapper bookMapper) {
+    public BookServiceImpl(BookRepository bookRepository, BookMapper bookMapper, EntityManager entityManager) {
         this.bookRepository = bookRepository;
         this.bookMapper = bookMapper;
+        this.entityManager = entityManager;
     }
 
     @Override
@@ -39,10 +55,68 @@ public class BookServiceImpl implements BookService {
         return bookMapper.bookToBookDto(savedBook);
     }
 
+    @Override
+    @Transactional
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        checkBookListForNull(bookDtoList);
+        List<Book> books = bookDtoList
+                .stream()
+                .map(bookMapper::bookDtoToBook)
+                .toList();
+        List<BookDto> savedBooks = new ArrayList<>(books.size());
+        bookRepository.saveAll(books)
+                .forEach(book -> savedBooks.add(bookMapper.bookToBookDto(book)));
+        log.info("Saved books: {}", savedBooks.size());
+        return savedBooks;
+    }
+
+    /**
+     * Takes the value from BOOK_SEQ directly, the block starting with it is not used by the id generator of Book.
+     */
+    @Override
+    public long reserveBookIds() {
+        return ((Number) entityManager.createNativeQuery(RESERVE_BOOK_IDS_SQL).getSingleResult()).longValue();
+    }
+
+    /**
+     * Entities with generated ids can't be persisted under a given id, the books are inserted
+     * with multi-row native INSERTs of up to INSERT_CHUNK_SIZE rows instead.
+     * The queries are synchronized with Book, so cached query results over books are invalidated
+     * as after an insert through the entity.
+     */
+    @Override
+    @Transactional
+    public List<BookDto> createBooksWithIds(List<BookDto> bookDtoList) {
+        checkBookIdsSet(bookDtoList);
+
+        for (int from = 0; from < bookDtoList.size(); from += INSERT_CHUNK_SIZE) {
+            List<BookDto> chunk = bookDtoList.subList(from, Math.min(from + INSERT_CHUNK_SIZE, bookDtoList.size()));
+            String insertSql = INSERT_BOOKS_WITH_IDS + String.join(",", Collections.nCopies(chunk.size(), "(?,?,?,?,?)"));
+            NativeQuery<?> insert = entityManager
+                    .createNativeQuery(insertSql)
+                    .unwrap(NativeQuery.class)
+                    .addSynchronizedEntityClass(Book.class);
+            int index = 1;
+            for (BookDto bookDto : chunk) {
+                insert.setParameter(index++, bookDto.getId());
+                insert.setParameter(index++, bookDto.getTitle());
+                insert.setParameter(index++, bookDto.getAuthor());
+                insert.setParameter(index++, bookDto.getPageCount());
+                insert.setParameter(index++, bookDto.getUserId());
+            }
+            insert.executeUpdate();
+        }
+        log.info("Saved books with reserved ids: {}", bookDtoList.size());
+        return bookDtoList;
+    }
+
     /**
      * Mapper is used for entity updating.
+     * The loaded book stays managed until commit, dirty checking flushes the UPDATE
+     * without the select of merging a detached entity.
      */
     @Override
+    @Transactional
     public BookDto updateBook(BookDto bookDto, Long bookId) {
         checkBookIdForNull(bookId);
         checkBookDtoForNull(bookDto);
@@ -58,7 +132,6 @@ public class BookServiceImpl implements BookService {
 
         Book updatedBook = bookMapper.updateBook(incomingBook, currentBook);
         log.info("Updated book: {}", updatedBook);
-        bookRepository.save(updatedBook);
 
         return bookMapper.bookToBookDto(updatedBook);
     }
@@ -76,6 +149,25 @@ public class BookServiceImpl implements BookService {
         return bookMapper.bookToBookDto(book);
     }
 
+    /**
+     * One query per MULTI_GET_CHUNK_SIZE ids.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<BookDto> getBooksByIds(Collection<Long> ids) {
+        checkBookIdsForNull(ids);
+
+        List<Long> idList = ids.stream().distinct().sorted().toList();
+        List<BookDto> bookList = new ArrayList<>(idList.size());
+        for (int from = 0; from < idList.size(); from += MULTI_GET_CHUNK_SIZE) {
+            List<Long> chunk = idList.subList(from, Math.min(from + MULTI_GET_CHUNK_SIZE, idList.size()));
+            bookRepository.findByIdInOrderById(chunk)
+                    .forEach(book -> bookList.add(bookMapper.bookToBookDto(book)));
+        }
+        log.info("Books found: {} of {}", bookList.size(), idList.size());
+        return bookList;
+    }
+
     @Override
     public List<BookDto> getBooksByUserId(Long userId) {
         checkUserIdForNull(userId);
@@ -93,6 +185,38 @@ public class BookServiceImpl implements BookService {
         return bookList;
     }
 
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId, long afterId, int limit) {
+        checkUserIdForNull(userId);
+        checkPageLimit(limit);
+
+        List<BookDto> bookList = bookRepository
+                .findByUserIdAndIdGreaterThanOrderById(userId, afterId, PageRequest.ofSize(limit))
+                .stream()
+                .map(bookMapper::bookToBookDto)
+                .toList();
+        log.info("Books found on page after id {}: {}", afterId, bookList.size());
+        return bookList;
+    }
+
+    /**
+     * Entities are detached as soon as they are mapped,
+     * so the persistence context does not grow with the number of books.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachBookByUserId(Long userId, long afterId, Consumer<BookDto> action) {
+        checkUserIdForNull(userId);
+
+        try (Stream<Book> books = bookRepository.streamByUserIdAndIdGreaterThanOrderById(userId, afterId)) {
+            books.forEach(book -> {
+                entityManager.detach(book);
+                action.accept(bookMapper.bookToBookDto(book));
+            });
+        }
+        log.info("Books streamed after id {}", afterId);
+    }
+
     @Override
     public void deleteBookById(Long bookId) {
         checkBookIdForNull(bookId);
@@ -101,11 +225,13 @@ public class BookServiceImpl implements BookService {
         log.info("Book deleted: {}", bookToDelete);
     }
 
+    /**
+     * Bulk delete without loading the books, a user without books is not an error.
+     */
     @Override
     public void deleteBooksByUserId(Long userId) {
         checkUserIdForNull(userId);
-        List<BookDto> bookList = getBooksByUserId(userId);
-        bookRepository.deleteBooksByUserId(userId);
-        log.info("Books deleted: {}", bookList);
+        int deleted = bookRepository.deleteBooksByUserId(userId);
+        log.info("Books of the user {} deleted: {}", userId, deleted);
     }
 }
@@ -4,62 +4,164 @@ import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.RowToBookDtoMapper;
 import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.util.IdBlockAllocator;
 import com.edu.ulab.app.util.JdbcHelper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Pure JDBC implementation.
  * Uses methods from utility class JdbcHelper for:
- * 1) JDBC Driver activation
- * 2) Connection activation
- * 3) SQLException handling
- * 4) Resource closing
+ * 1) Connection borrowing from the pool
+ * 2) SQLException handling
+ * 3) Resource closing (connections are returned to the pool)
  * Uses default implementations of checking methods from BookService interface.
  */
 @Slf4j
 @Service
 public class BookServiceImplJDBC implements BookService {
+    private static final int PAGE_INITIAL_CAPACITY = 256;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int MULTI_GET_CHUNK_SIZE = 500;
+    private static final String INSERT_BOOK_WITH_ID_SQL =
+            "INSERT INTO BOOK(ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (?,?,?,?,?)";
+    private static final String RESERVE_BOOK_IDS_SQL = "SELECT NEXT VALUE FOR BOOK_SEQ";
+    private static final String UPDATE_BOOK_SQL =
+            "UPDATE BOOK SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?  WHERE ID = ?";
+    private static final String SELECT_BOOK_SQL =
+            "SELECT USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE ID = ?";
+    private static final String SELECT_BOOKS_BY_IDS_SQL =
+            "SELECT ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID FROM BOOK WHERE ID = ANY(?) ORDER BY ID";
+    private static final String SELECT_BOOKS_BY_USER_SQL =
+            "SELECT ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE USER_ID = ?";
+    private static final String SELECT_BOOK_PAGE_BY_USER_SQL =
+            "SELECT ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE USER_ID = ? AND ID > ? ORDER BY ID LIMIT ?";
+    private static final String SELECT_BOOKS_AFTER_ID_BY_USER_SQL =
+            "SELECT ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE USER_ID = ? AND ID > ? ORDER BY ID";
+    private static final String DELETE_BOOK_SQL = "DELETE FROM BOOK WHERE ID = ?";
+    private static final String DELETE_BOOKS_BY_USER_SQL = "DELETE FROM BOOK WHERE USER_ID = ?";
+
+    private final IdBlockAllocator bookIdBlocks = new IdBlockAllocator(BOOK_ID_BLOCK_SIZE);
 
-    static {
-        JdbcHelper.activateDriver();
-    }
-
+    /**
+     * The id is taken from a block reserved with reserveBookIds, nothing is read back.
+     */
     @Override
     public BookDto createBook(BookDto bookDto) {
         checkBookDtoForNull(bookDto);
 
+        long bookId = bookIdBlocks.nextId(this::reserveBookIds);
         Connection connection = null;
         PreparedStatement ps = null;
-        ResultSet resultSet = null;
 
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String INSERT_SQL = "INSERT INTO BOOK(TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (?,?,?,?)";
-            ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, bookDto.getTitle());
-            ps.setString(2, bookDto.getAuthor());
-            ps.setLong(3, bookDto.getPageCount());
-            ps.setLong(4, bookDto.getUserId());
+            ps = JdbcHelper.prepareStatement(connection, INSERT_BOOK_WITH_ID_SQL);
+            ps.setLong(1, bookId);
+            ps.setString(2, bookDto.getTitle());
+            ps.setString(3, bookDto.getAuthor());
+            ps.setLong(4, bookDto.getPageCount());
+            ps.setLong(5, bookDto.getUserId());
             ps.executeUpdate();
 
-            resultSet = ps.getGeneratedKeys();
+            bookDto.setId(bookId);
+            log.info("Book id set: {}", bookId);
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Book not created: " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(ps, connection);
+        }
+        return bookDto;
+    }
+
+    /**
+     * Gives the books ids from blocks reserved with reserveBookIds,
+     * then inserts them as createBooksWithIds does.
+     */
+    @Override
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        checkBookListForNull(bookDtoList);
+        bookDtoList.forEach(bookDto -> bookDto.setId(bookIdBlocks.nextId(this::reserveBookIds)));
+        return createBooksWithIds(bookDtoList);
+    }
+
+    /**
+     * One value of BOOK_SEQ stands for the block of BOOK_ID_BLOCK_SIZE ids starting with it,
+     * as for the pooled-lo optimizer of the ORM backend.
+     */
+    @Override
+    public long reserveBookIds() {
+        long firstId = 0;
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, RESERVE_BOOK_IDS_SQL);
+            resultSet = ps.executeQuery();
             if (resultSet.next()) {
-                Long bookId = resultSet.getLong(1);
-                bookDto.setId(bookId);
-                log.info("Book id set: {}", bookId);
+                firstId = resultSet.getLong(1);
             }
         } catch (SQLException exc) {
             JdbcHelper.handleSqlException(exc);
         } finally {
             JdbcHelper.closeAll(resultSet, ps, connection);
         }
-        return bookDto;
+        if (firstId == 0) {
+            throw new IllegalStateException("No value read from BOOK_SEQ");
+        }
+        log.info("Book ids reserved from: {}", firstId);
+        return firstId;
+    }
+
+    /**
+     * Sends all inserts as one JDBC batch inside one transaction, nothing is read back.
+     */
+    @Override
+    public List<BookDto> createBooksWithIds(List<BookDto> bookDtoList) {
+        checkBookIdsSet(bookDtoList);
+        if (bookDtoList.isEmpty()) {
+            return bookDtoList;
+        }
+
+        Connection connection = null;
+        PreparedStatement ps = null;
+        boolean ownTransaction = false;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+            ownTransaction = JdbcHelper.beginTransaction(connection);
+
+            ps = JdbcHelper.prepareStatement(connection, INSERT_BOOK_WITH_ID_SQL);
+            for (BookDto bookDto : bookDtoList) {
+                ps.setLong(1, bookDto.getId());
+                ps.setString(2, bookDto.getTitle());
+                ps.setString(3, bookDto.getAuthor());
+                ps.setLong(4, bookDto.getPageCount());
+                ps.setObject(5, bookDto.getUserId(), Types.BIGINT);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            JdbcHelper.commitTransaction(connection, ownTransaction);
+            log.info("Books created in batch with reserved ids: {}", bookDtoList.size());
+        } catch (SQLException exc) {
+            JdbcHelper.rollbackTransaction(connection, ownTransaction);
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Books with reserved ids not created: " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(ps, connection);
+        }
+        return bookDtoList;
     }
 
     @Override
@@ -73,8 +175,7 @@ public class BookServiceImplJDBC implements BookService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String UPDATE_SQL = "UPDATE BOOK SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?  WHERE ID = ?";
-            ps = connection.prepareStatement(UPDATE_SQL);
+            ps = JdbcHelper.prepareStatement(connection, UPDATE_BOOK_SQL);
             ps.setString(1, bookDto.getTitle());
             ps.setString(2, bookDto.getAuthor());
             ps.setLong(3, bookDto.getPageCount());
@@ -84,6 +185,7 @@ public class BookServiceImplJDBC implements BookService {
 
         } catch (SQLException exc) {
             JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Book not updated: " + exc.getMessage(), exc);
         } finally {
             JdbcHelper.closeAll(ps, connection);
         }
@@ -106,9 +208,7 @@ public class BookServiceImplJDBC implements BookService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String SELECT_SQL =
-                    "SELECT USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE ID = ?";
-            ps = connection.prepareStatement(SELECT_SQL);
+            ps = JdbcHelper.prepareStatement(connection, SELECT_BOOK_SQL);
             ps.setLong(1, bookId);
 
             resultSet = ps.executeQuery();
@@ -132,6 +232,44 @@ public class BookServiceImplJDBC implements BookService {
         return bookDto;
     }
 
+    /**
+     * The ids of a chunk are bound as one array, an IN list of any length is the same statement
+     * for the statement cache and H2 still looks the ids up in the primary key.
+     */
+    @Override
+    public List<BookDto> getBooksByIds(Collection<Long> ids) {
+        checkBookIdsForNull(ids);
+
+        List<Long> idList = ids.stream().distinct().sorted().toList();
+        List<BookDto> bookList = new ArrayList<>(idList.size());
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, SELECT_BOOKS_BY_IDS_SQL);
+            for (int from = 0; from < idList.size(); from += MULTI_GET_CHUNK_SIZE) {
+                List<Long> chunk = idList.subList(from, Math.min(from + MULTI_GET_CHUNK_SIZE, idList.size()));
+                ps.setArray(1, connection.createArrayOf("BIGINT", chunk.toArray()));
+
+                resultSet = ps.executeQuery();
+                while (resultSet.next()) {
+                    bookList.add(rowToBookDto(resultSet, resultSet.getLong(5)));
+                }
+                resultSet.close();
+            }
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Books not read: " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(resultSet, ps, connection);
+        }
+        log.info("Books found: {} of {}", bookList.size(), idList.size());
+        return bookList;
+    }
+
     /**
      * In order to avoid overhead, gets the data from the row using the column number.
      * Because using a column name might add overhead: need to get column metadata info.
@@ -148,9 +286,7 @@ public class BookServiceImplJDBC implements BookService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String SELECT_SQL =
-                    "SELECT ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE USER_ID = ?";
-            ps = connection.prepareStatement(SELECT_SQL);
+            ps = JdbcHelper.prepareStatement(connection, SELECT_BOOKS_BY_USER_SQL);
             ps.setLong(1, userId);
 
             resultSet = ps.executeQuery();
@@ -178,6 +314,83 @@ public class BookServiceImplJDBC implements BookService {
         return bookList;
     }
 
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId, long afterId, int limit) {
+        checkUserIdForNull(userId);
+        checkPageLimit(limit);
+
+        List<BookDto> bookList = new ArrayList<>(Math.min(limit, PAGE_INITIAL_CAPACITY));
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, SELECT_BOOK_PAGE_BY_USER_SQL);
+            ps.setLong(1, userId);
+            ps.setLong(2, afterId);
+            ps.setInt(3, limit);
+
+            resultSet = ps.executeQuery();
+            while (resultSet.next()) {
+                bookList.add(rowToBookDto(resultSet, userId));
+            }
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Books page after id " + afterId + " not read: " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(resultSet, ps, connection);
+        }
+        log.info("Books found on page after id {}: {}", afterId, bookList.size());
+        return bookList;
+    }
+
+    /**
+     * Rows are handed to the action while the result set is read,
+     * the driver fetches them in chunks of STREAM_FETCH_SIZE.
+     */
+    @Override
+    public void forEachBookByUserId(Long userId, long afterId, Consumer<BookDto> action) {
+        checkUserIdForNull(userId);
+
+        long count = 0;
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, SELECT_BOOKS_AFTER_ID_BY_USER_SQL);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            ps.setLong(1, userId);
+            ps.setLong(2, afterId);
+
+            resultSet = ps.executeQuery();
+            while (resultSet.next()) {
+                action.accept(rowToBookDto(resultSet, userId));
+                count++;
+            }
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Books not streamed after id " + afterId + ": " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(resultSet, ps, connection);
+        }
+        log.info("Books streamed after id {}: {}", afterId, count);
+    }
+
+    private static BookDto rowToBookDto(ResultSet resultSet, Long userId) throws SQLException {
+        BookDto bookDto = new BookDto();
+        bookDto.setId(resultSet.getLong(1));
+        bookDto.setTitle(resultSet.getString(2));
+        bookDto.setAuthor(resultSet.getString(3));
+        bookDto.setPageCount(resultSet.getLong(4));
+        bookDto.setUserId(userId);
+        return bookDto;
+    }
+
     @Override
     public void deleteBookById(Long bookId) {
         checkBookIdForNull(bookId);
@@ -188,14 +401,14 @@ public class BookServiceImplJDBC implements BookService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String DELETE_SQL = "DELETE FROM BOOK WHERE ID = ?";
-            ps = connection.prepareStatement(DELETE_SQL);
+            ps = JdbcHelper.prepareStatement(connection, DELETE_BOOK_SQL);
             ps.setLong(1, bookId);
             ps.executeUpdate();
             log.info("Book deleted: {}", bookId);
 
         } catch (SQLException exc) {
             JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Book not deleted: " + exc.getMessage(), exc);
         } finally {
             JdbcHelper.closeAll(ps, connection);
         }
@@ -211,14 +424,14 @@ public class BookServiceImplJDBC implements BookService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String DELETE_SQL = "DELETE FROM BOOK WHERE USER_ID = ?";
-            ps = connection.prepareStatement(DELETE_SQL);
+            ps = JdbcHelper.prepareStatement(connection, DELETE_BOOKS_BY_USER_SQL);
             ps.setLong(1, userId);
             ps.executeUpdate();
             log.info("Books deleted by user id: {}", userId);
 
         } catch (SQLException exc) {
             JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Books of user not deleted: " + exc.getMessage(), exc);
         } finally {
             JdbcHelper.closeAll(ps, connection);
         }
@@ -0,0 +1,226 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.ReactiveBookService;
+import com.edu.ulab.app.util.IdBlockAllocator;
+import io.r2dbc.spi.Row;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * R2DBC implementation of the reactive profile.
+ * Statements join the reactive transaction of ReactiveUnitOfWork when there is one,
+ * otherwise each of them takes its own connection from the R2DBC pool.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+public class BookServiceImplR2dbc implements ReactiveBookService {
+    private static final String INSERT_BOOK_SQL =
+            "INSERT INTO BOOK(ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (:id, :title, :author, :pageCount, :userId)";
+    private static final String RESERVE_BOOK_IDS_SQL = "SELECT NEXT VALUE FOR BOOK_SEQ";
+    private static final String UPDATE_BOOK_SQL =
+            "UPDATE BOOK SET TITLE = :title, AUTHOR = :author, PAGE_COUNT = :pageCount WHERE ID = :id";
+    private static final String SELECT_BOOK_SQL =
+            "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE ID = :id";
+    private static final String SELECT_BOOKS_BY_USER_SQL =
+            "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE USER_ID = :userId";
+    private static final String SELECT_BOOK_PAGE_BY_USER_SQL =
+            "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK "
+                    + "WHERE USER_ID = :userId AND ID > :afterId ORDER BY ID LIMIT :limit";
+    private static final String SELECT_BOOKS_AFTER_ID_BY_USER_SQL =
+            "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK "
+                    + "WHERE USER_ID = :userId AND ID > :afterId ORDER BY ID";
+    private static final String DELETE_BOOK_SQL = "DELETE FROM BOOK WHERE ID = :id";
+    private static final String DELETE_BOOKS_BY_USER_SQL = "DELETE FROM BOOK WHERE USER_ID = :userId";
+
+    private final DatabaseClient databaseClient;
+    private final IdBlockAllocator bookIdBlocks = new IdBlockAllocator(BookService.BOOK_ID_BLOCK_SIZE);
+
+    public BookServiceImplR2dbc(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * The id is taken from a block reserved from BOOK_SEQ, nothing is read back.
+     */
+    @Override
+    public Mono<BookDto> createBook(BookDto bookDto) {
+        return Mono.defer(() -> {
+            checkBookDtoForNull(bookDto);
+            checkUserIdForNull(bookDto.getUserId());
+
+            return nextBookId().flatMap(bookId -> bindBook(databaseClient.sql(INSERT_BOOK_SQL), bookDto)
+                    .bind("id", bookId)
+                    .bind("userId", bookDto.getUserId())
+                    .fetch()
+                    .rowsUpdated()
+                    .map(insertedRows -> {
+                        bookDto.setId(bookId);
+                        log.info("Book created: {}", bookId);
+                        return bookDto;
+                    }));
+        });
+    }
+
+    /**
+     * The inserts are issued one after another, so the books keep the order of the list.
+     */
+    @Override
+    public Flux<BookDto> createBooks(List<BookDto> bookDtoList) {
+        return Flux.defer(() -> {
+            checkBookListForNull(bookDtoList);
+
+            return Flux.fromIterable(bookDtoList)
+                    .concatMap(this::createBook)
+                    .doOnComplete(() -> log.info("Books created in batch: {}", bookDtoList.size()));
+        });
+    }
+
+    @Override
+    public Mono<BookDto> updateBook(BookDto bookDto, Long bookId) {
+        return Mono.defer(() -> {
+            checkBookIdForNull(bookId);
+            checkBookDtoForNull(bookDto);
+
+            return bindBook(databaseClient.sql(UPDATE_BOOK_SQL), bookDto)
+                    .bind("id", bookId)
+                    .fetch()
+                    .rowsUpdated()
+                    .doOnNext(updatedRows -> log.info("Book updated: {}", bookId))
+                    .then(getBookById(bookId));
+        });
+    }
+
+    @Override
+    public Mono<BookDto> getBookById(Long bookId) {
+        return Mono.defer(() -> {
+            checkBookIdForNull(bookId);
+
+            return databaseClient.sql(SELECT_BOOK_SQL)
+                    .bind("id", bookId)
+                    .map(BookServiceImplR2dbc::toBookDto)
+                    .one()
+                    .switchIfEmpty(Mono.error(() ->
+                            new NotFoundException(String.format("Book with id %d not found", bookId))))
+                    .doOnNext(bookDto -> log.info("Book found: {}", bookId));
+        });
+    }
+
+    @Override
+    public Flux<BookDto> getBooksByUserId(Long userId) {
+        return Flux.defer(() -> {
+            checkUserIdForNull(userId);
+
+            return databaseClient.sql(SELECT_BOOKS_BY_USER_SQL)
+                    .bind("userId", userId)
+                    .map(BookServiceImplR2dbc::toBookDto)
+                    .all()
+                    .switchIfEmpty(Flux.error(() ->
+                            new NotFoundException(String.format("Books of the User with id %d not found", userId))));
+        });
+    }
+
+    @Override
+    public Flux<BookDto> getBooksByUserId(Long userId, long afterId, int limit) {
+        return Flux.defer(() -> {
+            checkUserIdForNull(userId);
+            checkPageLimit(limit);
+
+            return databaseClient.sql(SELECT_BOOK_PAGE_BY_USER_SQL)
+                    .bind("userId", userId)
+                    .bind("afterId", afterId)
+                    .bind("limit", limit)
+                    .map(BookServiceImplR2dbc::toBookDto)
+                    .all();
+        });
+    }
+
+    @Override
+    public Flux<BookDto> streamBooksByUserId(Long userId, long afterId) {
+        return Flux.defer(() -> {
+            checkUserIdForNull(userId);
+
+            return databaseClient.sql(SELECT_BOOKS_AFTER_ID_BY_USER_SQL)
+                    .bind("userId", userId)
+                    .bind("afterId", afterId)
+                    .map(BookServiceImplR2dbc::toBookDto)
+                    .all();
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteBookById(Long bookId) {
+        return Mono.defer(() -> {
+            checkBookIdForNull(bookId);
+
+            return databaseClient.sql(DELETE_BOOK_SQL)
+                    .bind("id", bookId)
+                    .fetch()
+                    .rowsUpdated()
+                    .doOnNext(deletedRows -> log.info("Book deleted: {}", bookId))
+                    .then();
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteBooksByUserId(Long userId) {
+        return Mono.defer(() -> {
+            checkUserIdForNull(userId);
+
+            return databaseClient.sql(DELETE_BOOKS_BY_USER_SQL)
+                    .bind("userId", userId)
+                    .fetch()
+                    .rowsUpdated()
+                    .doOnNext(deletedRows -> log.info("Books deleted by user id: {}", userId))
+                    .then();
+        });
+    }
+
+    /**
+     * One value of BOOK_SEQ stands for the block of BOOK_ID_BLOCK_SIZE ids starting with it,
+     * as for the pooled-lo optimizer of the ORM backend. Only a used up block is replaced by a query.
+     */
+    private Mono<Long> nextBookId() {
+        return Mono.defer(() -> {
+            long bookId = bookIdBlocks.pollId();
+            if (bookId != 0) {
+                return Mono.just(bookId);
+            }
+            return databaseClient.sql(RESERVE_BOOK_IDS_SQL)
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .doOnNext(firstId -> log.info("Book ids reserved from: {}", firstId))
+                    .map(bookIdBlocks::nextIdFrom);
+        });
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindBook(DatabaseClient.GenericExecuteSpec spec, BookDto bookDto) {
+        spec = bookDto.getTitle() == null
+                ? spec.bindNull("title", String.class)
+                : spec.bind("title", bookDto.getTitle());
+        spec = bookDto.getAuthor() == null
+                ? spec.bindNull("author", String.class)
+                : spec.bind("author", bookDto.getAuthor());
+        return spec.bind("pageCount", bookDto.getPageCount());
+    }
+
+    private static BookDto toBookDto(Row row) {
+        BookDto bookDto = new BookDto();
+        bookDto.setId(row.get("ID", Long.class));
+        bookDto.setUserId(row.get("USER_ID", Long.class));
+        bookDto.setTitle(row.get("TITLE", String.class));
+        bookDto.setAuthor(row.get("AUTHOR", String.class));
+        Integer pageCount = row.get("PAGE_COUNT", Integer.class);
+        bookDto.setPageCount(pageCount == null ? 0 : pageCount);
+        return bookDto;
+    }
+}
@@ -0,0 +1,190 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.mapper.BookMapper;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.storage.BookStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * In-memory storage implementation.
+ * Uses default implementations of checking methods from BookService interface.
+ */
+@Slf4j
+@Service
+public class BookServiceImplStorage implements BookService {
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private final BookStorage bookStorage;
+    private final BookMapper bookMapper;
+
+    public BookServiceImplStorage(BookStorage bookStorage, BookMapper bookMapper) {
+        this.bookStorage = bookStorage;
+        this.bookMapper = bookMapper;
+    }
+
+    @Override
+    public BookDto createBook(BookDto bookDto) {
+        checkBookDtoForNull(bookDto);
+
+        Book book = bookMapper.bookDtoToBook(bookDto);
+        log.info("Mapped book (dto -> entity): {}", book);
+        Book savedBook = bookStorage.saveBook(book);
+        log.info("Saved book: {}", savedBook);
+        return bookMapper.bookToBookDto(savedBook);
+    }
+
+    @Override
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        checkBookListForNull(bookDtoList);
+
+        List<Book> books = bookDtoList
+                .stream()
+                .map(bookMapper::bookDtoToBook)
+                .toList();
+        List<BookDto> savedBooks = bookStorage
+                .saveBooks(books)
+                .stream()
+                .map(bookMapper::bookToBookDto)
+                .toList();
+        log.info("Saved books: {}", savedBooks.size());
+        return savedBooks;
+    }
+
+    @Override
+    public long reserveBookIds() {
+        return bookStorage.reserveBookIds(BOOK_ID_BLOCK_SIZE);
+    }
+
+    @Override
+    public List<BookDto> createBooksWithIds(List<BookDto> bookDtoList) {
+        checkBookIdsSet(bookDtoList);
+
+        List<Book> books = bookDtoList
+                .stream()
+                .map(bookMapper::bookDtoToBook)
+                .toList();
+        List<BookDto> savedBooks = bookStorage
+                .saveBooksWithIds(books)
+                .stream()
+                .map(bookMapper::bookToBookDto)
+                .toList();
+        log.info("Saved books with reserved ids: {}", savedBooks.size());
+        return savedBooks;
+    }
+
+    @Override
+    public BookDto updateBook(BookDto bookDto, Long bookId) {
+        checkBookIdForNull(bookId);
+        checkBookDtoForNull(bookDto);
+
+        Book updatedBook = bookStorage
+                .updateBook(bookId, bookMapper.bookDtoToBook(bookDto))
+                .orElseThrow(() ->
+                        new NotFoundException(String.format("Book with id %d not found", bookId)));
+        log.info("Updated book: {}", updatedBook);
+        return bookMapper.bookToBookDto(updatedBook);
+    }
+
+    @Override
+    public BookDto getBookById(Long bookId) {
+        checkBookIdForNull(bookId);
+
+        Book book = bookStorage
+                .findBookById(bookId)
+                .orElseThrow(() ->
+                        new NotFoundException(String.format("Book with id %d not found", bookId)));
+        log.info("Found book: {}", book);
+        return bookMapper.bookToBookDto(book);
+    }
+
+    @Override
+    public List<BookDto> getBooksByIds(Collection<Long> ids) {
+        checkBookIdsForNull(ids);
+
+        List<BookDto> bookList = ids.stream()
+                .distinct()
+                .sorted()
+                .map(bookStorage::findBookById)
+                .flatMap(Optional::stream)
+                .map(bookMapper::bookToBookDto)
+                .toList();
+        log.info("Books found: {} of {}", bookList.size(), ids.size());
+        return bookList;
+    }
+
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId) {
+        checkUserIdForNull(userId);
+
+        List<BookDto> bookList = bookStorage
+                .findBooksByUserId(userId)
+                .stream()
+                .map(bookMapper::bookToBookDto)
+                .toList();
+        if (bookList.size() == 0) {
+            throw new NotFoundException(String.format("Books of the User with id %d not found", userId));
+        }
+        log.info("Books found: {}", bookList);
+        return bookList;
+    }
+
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId, long afterId, int limit) {
+        checkUserIdForNull(userId);
+        checkPageLimit(limit);
+
+        List<BookDto> bookList = bookStorage
+                .findBooksByUserId(userId, afterId, limit)
+                .stream()
+                .map(bookMapper::bookToBookDto)
+                .toList();
+        log.info("Books found on page after id {}: {}", afterId, bookList.size());
+        return bookList;
+    }
+
+    /**
+     * Reads the storage page by page, so the storage lock is not held while the action runs.
+     */
+    @Override
+    public void forEachBookByUserId(Long userId, long afterId, Consumer<BookDto> action) {
+        checkUserIdForNull(userId);
+
+        long lastId = afterId;
+        List<Book> page;
+        do {
+            page = bookStorage.findBooksByUserId(userId, lastId, STREAM_PAGE_SIZE);
+            for (Book book : page) {
+                action.accept(bookMapper.bookToBookDto(book));
+                lastId = book.getId();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+        log.info("Books streamed after id {}, last id: {}", afterId, lastId);
+    }
+
+    @Override
+    public void deleteBookById(Long bookId) {
+        checkBookIdForNull(bookId);
+
+        if (!bookStorage.deleteBookById(bookId)) {
+            throw new NotFoundException(String.format("Book with id %d not found", bookId));
+        }
+        log.info("Book deleted: {}", bookId);
+    }
+
+    @Override
+    public void deleteBooksByUserId(Long userId) {
+        checkUserIdForNull(userId);
+
+        int deleted = bookStorage.deleteBooksByUserId(userId);
+        log.info("Books deleted by user id {}: {}", userId, deleted);
+    }
+}
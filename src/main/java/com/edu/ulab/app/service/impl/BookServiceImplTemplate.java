@@ -4,15 +4,20 @@ import com.edu.ulab.app.dto.BookDto;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.RowToBookDtoMapper;
 import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.util.IdBlockAllocator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * JDBC Template implementation.
@@ -21,43 +26,95 @@ import java.util.Objects;
 @Slf4j
 @Service
 public class BookServiceImplTemplate implements BookService {
+    private static final int INSERT_CHUNK_SIZE = 100;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int MULTI_GET_CHUNK_SIZE = 500;
+    private static final String INSERT_BOOK_WITH_ID_SQL =
+            "INSERT INTO BOOK(ID, TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (?,?,?,?,?)";
+    private static final String RESERVE_BOOK_IDS_SQL = "SELECT NEXT VALUE FOR BOOK_SEQ";
+    private static final String UPDATE_BOOK_SQL =
+            "UPDATE BOOK SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?  WHERE ID = ?";
+    private static final String SELECT_BOOK_SQL = "SELECT * FROM BOOK WHERE ID = ?";
+    private static final String SELECT_BOOKS_BY_IDS_SQL =
+            "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK WHERE ID = ANY(?) ORDER BY ID";
+    private static final String SELECT_BOOKS_BY_USER_SQL = "SELECT * FROM BOOK WHERE USER_ID = ?";
+    private static final String SELECT_BOOK_PAGE_BY_USER_SQL =
+            "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK "
+                    + "WHERE USER_ID = ? AND ID > ? ORDER BY ID LIMIT ?";
+    private static final String SELECT_BOOKS_AFTER_ID_BY_USER_SQL =
+            "SELECT ID, USER_ID, TITLE, AUTHOR, PAGE_COUNT FROM BOOK "
+                    + "WHERE USER_ID = ? AND ID > ? ORDER BY ID";
+    private static final String DELETE_BOOK_SQL = "DELETE FROM BOOK WHERE ID = ?";
+    private static final String DELETE_BOOKS_BY_USER_SQL = "DELETE FROM BOOK WHERE USER_ID = ?";
 
     private final JdbcTemplate jdbcTemplate;
+    private final IdBlockAllocator bookIdBlocks = new IdBlockAllocator(BOOK_ID_BLOCK_SIZE);
 
     public BookServiceImplTemplate(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    /**
+     * The id is taken from a block reserved with reserveBookIds, nothing is read back.
+     */
     @Override
     public BookDto createBook(BookDto bookDto) {
         checkBookDtoForNull(bookDto);
-        final String INSERT_SQL = "INSERT INTO BOOK(TITLE, AUTHOR, PAGE_COUNT, USER_ID) VALUES (?,?,?,?)";
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(
-                connection -> {
-                    PreparedStatement ps =
-                            connection.prepareStatement(INSERT_SQL, new String[]{"id"});
-                    ps.setString(1, bookDto.getTitle());
-                    ps.setString(2, bookDto.getAuthor());
-                    ps.setLong(3, bookDto.getPageCount());
-                    ps.setLong(4, bookDto.getUserId());
-                    return ps;
-                },
-                keyHolder);
 
-        bookDto.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        long bookId = bookIdBlocks.nextId(this::reserveBookIds);
+        jdbcTemplate.update(INSERT_BOOK_WITH_ID_SQL,
+                bookId, bookDto.getTitle(), bookDto.getAuthor(), bookDto.getPageCount(), bookDto.getUserId());
+        bookDto.setId(bookId);
         return bookDto;
     }
 
+    /**
+     * Gives the books ids from blocks reserved with reserveBookIds,
+     * then inserts them as createBooksWithIds does.
+     */
+    @Override
+    @Transactional
+    public List<BookDto> createBooks(List<BookDto> bookDtoList) {
+        checkBookListForNull(bookDtoList);
+        bookDtoList.forEach(bookDto -> bookDto.setId(bookIdBlocks.nextId(this::reserveBookIds)));
+        return createBooksWithIds(bookDtoList);
+    }
+
+    /**
+     * One value of BOOK_SEQ stands for the block of BOOK_ID_BLOCK_SIZE ids starting with it,
+     * as for the pooled-lo optimizer of the ORM backend.
+     */
+    @Override
+    public long reserveBookIds() {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject(RESERVE_BOOK_IDS_SQL, Long.class));
+    }
+
+    /**
+     * The ids are known, so the inserts go out as JDBC batches of INSERT_CHUNK_SIZE rows without reading keys.
+     */
+    @Override
+    @Transactional
+    public List<BookDto> createBooksWithIds(List<BookDto> bookDtoList) {
+        checkBookIdsSet(bookDtoList);
+        jdbcTemplate.batchUpdate(INSERT_BOOK_WITH_ID_SQL, bookDtoList, INSERT_CHUNK_SIZE, (ps, bookDto) -> {
+            ps.setLong(1, bookDto.getId());
+            ps.setString(2, bookDto.getTitle());
+            ps.setString(3, bookDto.getAuthor());
+            ps.setLong(4, bookDto.getPageCount());
+            ps.setObject(5, bookDto.getUserId(), Types.BIGINT);
+        });
+        log.info("Books created in batch with reserved ids: {}", bookDtoList.size());
+        return bookDtoList;
+    }
+
     @Override
     public BookDto updateBook(BookDto bookDto, Long bookId) {
         checkBookIdForNull(bookId);
         checkBookDtoForNull(bookDto);
 
-        final String UPDATE_SQL = "UPDATE BOOK SET TITLE = ?, AUTHOR = ?, PAGE_COUNT = ?  WHERE ID = ?";
         jdbcTemplate.update(
                 connection -> {
-                    PreparedStatement ps = connection.prepareStatement(UPDATE_SQL);
+                    PreparedStatement ps = connection.prepareStatement(UPDATE_BOOK_SQL);
                     ps.setString(1, bookDto.getTitle());
                     ps.setString(2, bookDto.getAuthor());
                     ps.setLong(3, bookDto.getPageCount());
@@ -73,9 +130,8 @@ public class BookServiceImplTemplate implements BookService {
     public BookDto getBookById(Long bookId) {
         checkBookIdForNull(bookId);
 
-        final String SELECT_SQL = "SELECT * FROM BOOK WHERE ID = ?";
         List<BookDto> bookList = jdbcTemplate.query(
-                SELECT_SQL, preparedStatement -> preparedStatement.setLong(1, bookId),
+                SELECT_BOOK_SQL, preparedStatement -> preparedStatement.setLong(1, bookId),
                 new RowToBookDtoMapper());
 
         if (bookList.size() == 0) {
@@ -85,13 +141,34 @@ public class BookServiceImplTemplate implements BookService {
         return bookList.get(0);
     }
 
+    /**
+     * One query per MULTI_GET_CHUNK_SIZE ids, bound as one array.
+     */
+    @Override
+    public List<BookDto> getBooksByIds(Collection<Long> ids) {
+        checkBookIdsForNull(ids);
+
+        List<Long> idList = ids.stream().distinct().sorted().toList();
+        List<BookDto> bookList = new ArrayList<>(idList.size());
+        RowToBookDtoMapper mapper = new RowToBookDtoMapper();
+        for (int from = 0; from < idList.size(); from += MULTI_GET_CHUNK_SIZE) {
+            List<Long> chunk = idList.subList(from, Math.min(from + MULTI_GET_CHUNK_SIZE, idList.size()));
+            bookList.addAll(jdbcTemplate.query(
+                    SELECT_BOOKS_BY_IDS_SQL,
+                    preparedStatement -> preparedStatement.setArray(1,
+                            preparedStatement.getConnection().createArrayOf("BIGINT", chunk.toArray())),
+                    mapper));
+        }
+        log.info("Books found: {} of {}", bookList.size(), idList.size());
+        return bookList;
+    }
+
     @Override
     public List<BookDto> getBooksByUserId(Long userId) {
         checkUserIdForNull(userId);
 
-        final String SELECT_SQL = "SELECT * FROM BOOK WHERE USER_ID = ?";
         List<BookDto> bookList = jdbcTemplate.query(
-                SELECT_SQL, preparedStatement -> preparedStatement.setLong(1, userId),
+                SELECT_BOOKS_BY_USER_SQL, preparedStatement -> preparedStatement.setLong(1, userId),
                 new RowToBookDtoMapper());
 
         if (bookList.size() == 0) {
@@ -101,14 +178,46 @@ public class BookServiceImplTemplate implements BookService {
         return bookList;
     }
 
+    @Override
+    public List<BookDto> getBooksByUserId(Long userId, long afterId, int limit) {
+        checkUserIdForNull(userId);
+        checkPageLimit(limit);
+
+        List<BookDto> bookList = jdbcTemplate.query(
+                SELECT_BOOK_PAGE_BY_USER_SQL,
+                preparedStatement -> {
+                    preparedStatement.setLong(1, userId);
+                    preparedStatement.setLong(2, afterId);
+                    preparedStatement.setInt(3, limit);
+                },
+                new RowToBookDtoMapper());
+        log.info("Books found on page after id {}: {}", afterId, bookList.size());
+        return bookList;
+    }
+
+    @Override
+    public void forEachBookByUserId(Long userId, long afterId, Consumer<BookDto> action) {
+        checkUserIdForNull(userId);
+
+        RowToBookDtoMapper mapper = new RowToBookDtoMapper();
+        jdbcTemplate.query(
+                SELECT_BOOKS_AFTER_ID_BY_USER_SQL,
+                preparedStatement -> {
+                    preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+                    preparedStatement.setLong(1, userId);
+                    preparedStatement.setLong(2, afterId);
+                },
+                (RowCallbackHandler) resultSet -> action.accept(mapper.mapRow(resultSet, resultSet.getRow())));
+        log.info("Books streamed after id {}", afterId);
+    }
+
     @Override
     public void deleteBookById(Long bookId) {
         checkBookIdForNull(bookId);
 
-        final String DELETE_SQL = "DELETE FROM BOOK WHERE ID = ?";
         jdbcTemplate.update(
                 connection -> {
-                    PreparedStatement ps = connection.prepareStatement(DELETE_SQL);
+                    PreparedStatement ps = connection.prepareStatement(DELETE_BOOK_SQL);
                     ps.setLong(1, bookId);
                     return ps;
                 }
@@ -120,10 +229,9 @@ public class BookServiceImplTemplate implements BookService {
     public void deleteBooksByUserId(Long userId) {
         checkUserIdForNull(userId);
 
-        final String DELETE_SQL = "DELETE FROM BOOK WHERE USER_ID = ?";
         jdbcTemplate.update(
                 connection -> {
-                    PreparedStatement ps = connection.prepareStatement(DELETE_SQL);
+                    PreparedStatement ps = connection.prepareStatement(DELETE_BOOKS_BY_USER_SQL);
                     ps.setLong(1, userId);
                     return ps;
                 }
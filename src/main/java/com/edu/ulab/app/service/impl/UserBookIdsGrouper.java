@@ -0,0 +1,50 @@
+package com.edu.ulab.app.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Folds rows of PERSON LEFT JOIN BOOK ordered by user id into one call per user.
+ * Only the book ids of the current user are held, whatever the size of the result.
+ */
+final class UserBookIdsGrouper {
+    private final BiConsumer<Long, List<Long>> action;
+    private Long userId;
+    private List<Long> bookIds = new ArrayList<>();
+    private long users;
+
+    UserBookIdsGrouper(BiConsumer<Long, List<Long>> action) {
+        this.action = action;
+    }
+
+    /**
+     * bookId is null for a user without books.
+     */
+    void accept(long rowUserId, Long bookId) {
+        if (userId != null && userId != rowUserId) {
+            emit();
+        }
+        userId = rowUserId;
+        if (bookId != null) {
+            bookIds.add(bookId);
+        }
+    }
+
+    /**
+     * Emits the last user, returns the number of users emitted.
+     */
+    long finish() {
+        if (userId != null) {
+            emit();
+        }
+        return users;
+    }
+
+    private void emit() {
+        action.accept(userId, bookIds);
+        users++;
+        userId = null;
+        bookIds = new ArrayList<>();
+    }
+}
@@ -4,10 +4,20 @@ import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.entity.Person;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.repository.BookRepository;
 import com.edu.ulab.app.repository.UserRepository;
 import com.edu.ulab.app.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 /**
  * ORM implementation.
@@ -16,12 +26,15 @@ import org.springframework.stereotype.Service;
 @Slf4j
 @Service
 public class UserServiceImpl implements UserService {
+    private static final int MULTI_GET_CHUNK_SIZE = 500;
 
     private final UserRepository userRepository;
+    private final BookRepository bookRepository;
     private final UserMapper userMapper;
 
-    public UserServiceImpl(UserRepository userRepository, UserMapper userMapper) {
+    public UserServiceImpl(UserRepository userRepository, BookRepository bookRepository, UserMapper userMapper) {
         this.userRepository = userRepository;
+        this.bookRepository = bookRepository;
         this.userMapper = userMapper;
     }
 
@@ -39,11 +52,28 @@ public class UserServiceImpl implements UserService {
         return userMapper.personToUserDto(savedUser);
     }
 
+    @Override
+    @Transactional
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        checkUserListForNull(userDtoList);
+        List<Person> users = userDtoList
+                .stream()
+                .map(userMapper::userDtoToPerson)
+                .toList();
+        List<UserDto> savedUsers = new ArrayList<>(users.size());
+        userRepository.saveAll(users)
+                .forEach(user -> savedUsers.add(userMapper.personToUserDto(user)));
+        log.info("Saved users: {}", savedUsers.size());
+        return savedUsers;
+    }
+
     /**
-     * Mapper is used for entity updating.
+     * Mapper is used for entity updating, dirty checking flushes the UPDATE at commit.
+     * The user row is read FOR UPDATE, concurrent updates of the user wait for the commit, in any instance.
      * Also checks username on max length.
      */
     @Override
+    @Transactional
     public UserDto updateUser(UserDto userDto, Long userId) {
         checkUserIdForNull(userId);
         checkUserDtoForNull(userDto);
@@ -52,7 +82,7 @@ public class UserServiceImpl implements UserService {
         log.info("Mapped user (dto -> entity): {}", incomingUser);
 
         Person currentUser = userRepository
-                .findById(userId)
+                .findByIdForUpdate(userId)
                 .orElseThrow(() ->
                         new NotFoundException(String.format("User with id %d not found", userId)));
         log.info("Current user found for update: {}", currentUser);
@@ -60,7 +90,6 @@ public class UserServiceImpl implements UserService {
         Person updatedUser = userMapper.updatePerson(incomingUser, currentUser);
         log.info("User updated: {}", updatedUser);
 
-        userRepository.save(updatedUser);
         return userMapper.personToUserDto(updatedUser);
     }
 
@@ -78,10 +107,64 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
+    @Transactional(readOnly = true)
+    public List<Long> getUserWithBookIds(Long userId) {
+        checkUserIdForNull(userId);
+
+        List<Long> bookIds = userRepository.findBookIdsOfUser(userId);
+        if (bookIds.isEmpty()) {
+            throw new NotFoundException(String.format("User with id %d not found", userId));
+        }
+        log.info("Book ids of user {}: {}", userId, bookIds);
+        return bookIds.get(0) == null ? List.of() : bookIds;
+    }
+
+    /**
+     * The books are deleted through Hibernate before the user, instead of only by the ON DELETE CASCADE
+     * of the database, so their second-level cache entries and cached queries are invalidated.
+     */
+    @Override
+    @Transactional
     public void deleteUserById(Long userId) {
         checkUserIdForNull(userId);
         UserDto userToDelete = getUserById(userId);
+        bookRepository.deleteBooksByUserId(userId);
         userRepository.deleteById(userId);
         log.info("User deleted: {}", userToDelete);
     }
+
+    /**
+     * Selects ids only, so no entity enters the persistence context.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachUserWithBookIds(long afterUserId, BiConsumer<Long, List<Long>> action) {
+        UserBookIdsGrouper grouper = new UserBookIdsGrouper(action);
+        try (Stream<Object[]> rows = userRepository.streamUserBookIds(afterUserId)) {
+            rows.forEach(row -> grouper.accept((Long) row[0], (Long) row[1]));
+        }
+        log.info("Users streamed after id {}: {}", afterUserId, grouper.finish());
+    }
+
+    /**
+     * One query of users joined to books per MULTI_GET_CHUNK_SIZE ids,
+     * with IN list padding the chunks share a few query plans.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, List<Long>> getUsersWithBookIds(Collection<Long> userIds) {
+        checkUserIdsForNull(userIds);
+
+        List<Long> idList = userIds.stream().distinct().sorted().toList();
+        Map<Long, List<Long>> users = new LinkedHashMap<>();
+        for (int from = 0; from < idList.size(); from += MULTI_GET_CHUNK_SIZE) {
+            List<Long> chunk = idList.subList(from, Math.min(from + MULTI_GET_CHUNK_SIZE, idList.size()));
+            UserBookIdsGrouper grouper = new UserBookIdsGrouper(users::put);
+            userRepository.findUserBookIds(chunk)
+                    .forEach(row -> grouper.accept((Long) row[0], (Long) row[1]));
+            grouper.finish();
+        }
+        log.info("Users found: {} of {}", users.size(), idList.size());
+        return users;
+    }
 }
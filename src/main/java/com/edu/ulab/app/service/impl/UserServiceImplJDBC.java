@@ -5,61 +5,133 @@ import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.RowToUserDtoMapper;
 import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.util.IdBlockAllocator;
 import com.edu.ulab.app.util.JdbcHelper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Pure JDBC implementation.
  * Uses methods from utility class JdbcHelper for:
- * 1) JDBC Driver activation
- * 2) Connection activation
- * 3) SQLException handling
- * 4) Resource closing
+ * 1) Connection borrowing from the pool
+ * 2) SQLException handling
+ * 3) Resource closing (connections are returned to the pool)
  * Uses default implementations of checking methods from BookService interface.
  */
 @Slf4j
 @Service
 public class UserServiceImplJDBC implements UserService {
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int MULTI_GET_CHUNK_SIZE = 500;
+    private static final String INSERT_PERSON_SQL =
+            "INSERT INTO PERSON(ID, FULL_NAME, TITLE, AGE) VALUES (?,?,?,?)";
+    private static final String RESERVE_USER_IDS_SQL = "SELECT NEXT VALUE FOR PERSON_SEQ";
+    private static final String UPDATE_PERSON_SQL =
+            "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ?  WHERE ID = ?";
+    private static final String SELECT_PERSON_SQL = "SELECT FULL_NAME, TITLE, AGE FROM PERSON WHERE ID = ?";
+    private static final String DELETE_PERSON_SQL = "DELETE FROM PERSON WHERE ID = ?";
+    private static final String SELECT_BOOK_IDS_OF_USER_SQL =
+            "SELECT B.ID FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID WHERE P.ID = ? ORDER BY B.ID";
+    private static final String SELECT_USER_BOOK_IDS_SQL =
+            "SELECT P.ID, B.ID FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID "
+                    + "WHERE P.ID > ? ORDER BY P.ID, B.ID";
+    private static final String SELECT_USERS_BOOK_IDS_SQL =
+            "SELECT P.ID, B.ID FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID "
+                    + "WHERE P.ID = ANY(?) ORDER BY P.ID, B.ID";
 
-    static {
-        JdbcHelper.activateDriver();
-    }
+    private final IdBlockAllocator userIdBlocks = new IdBlockAllocator(USER_ID_BLOCK_SIZE);
 
+    /**
+     * The id is taken from a block reserved from PERSON_SEQ, nothing is read back.
+     */
     @Override
     public UserDto createUser(UserDto userDto) {
         checkUserDtoForNull(userDto);
 
+        long userId = userIdBlocks.nextId(this::reserveUserIds);
         Connection connection = null;
         PreparedStatement ps = null;
-        ResultSet resultSet = null;
 
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String INSERT_SQL = "INSERT INTO PERSON(FULL_NAME, TITLE, AGE) VALUES (?,?,?)";
-            ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, userDto.getFullName());
-            ps.setString(2, userDto.getTitle());
-            ps.setLong(3, userDto.getAge());
+            ps = JdbcHelper.prepareStatement(connection, INSERT_PERSON_SQL);
+            ps.setLong(1, userId);
+            ps.setString(2, userDto.getFullName());
+            ps.setString(3, userDto.getTitle());
+            ps.setLong(4, userDto.getAge());
             ps.executeUpdate();
 
-            resultSet = ps.getGeneratedKeys();
-            if (resultSet.next()) {
-                long userId = resultSet.getLong(1);
-                userDto.setId(userId);
-                log.info("User id set: {}", userId);
-            }
+            userDto.setId(userId);
+            log.info("User id set: {}", userId);
         } catch (SQLException exc) {
             JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("User not created: " + exc.getMessage(), exc);
         } finally {
-            JdbcHelper.closeAll(resultSet, ps, connection);
+            JdbcHelper.closeAll(ps, connection);
         }
         return userDto;
     }
 
+    /**
+     * Sends all inserts as one JDBC batch inside one transaction,
+     * under ids taken from blocks reserved from PERSON_SEQ, nothing is read back.
+     */
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        checkUserListForNull(userDtoList);
+        if (userDtoList.isEmpty()) {
+            return userDtoList;
+        }
+
+        long[] ids = new long[userDtoList.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = userIdBlocks.nextId(this::reserveUserIds);
+        }
+        Connection connection = null;
+        PreparedStatement ps = null;
+        boolean ownTransaction = false;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+            ownTransaction = JdbcHelper.beginTransaction(connection);
+
+            ps = JdbcHelper.prepareStatement(connection, INSERT_PERSON_SQL);
+            for (int i = 0; i < ids.length; i++) {
+                UserDto userDto = userDtoList.get(i);
+                ps.setLong(1, ids[i]);
+                ps.setString(2, userDto.getFullName());
+                ps.setString(3, userDto.getTitle());
+                ps.setLong(4, userDto.getAge());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            JdbcHelper.commitTransaction(connection, ownTransaction);
+            log.info("Users created in batch: {}", userDtoList.size());
+        } catch (SQLException exc) {
+            JdbcHelper.rollbackTransaction(connection, ownTransaction);
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Users not created: " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(ps, connection);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            userDtoList.get(i).setId(ids[i]);
+        }
+        return userDtoList;
+    }
+
+    /**
+     * The updated row consists of the given details, so it is not selected again.
+     */
     @Override
     public UserDto updateUser(UserDto userDto, Long userId) {
         checkUserIdForNull(userId);
@@ -71,21 +143,24 @@ public class UserServiceImplJDBC implements UserService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String UPDATE_SQL = "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ?  WHERE ID = ?";
-            ps = connection.prepareStatement(UPDATE_SQL);
+            ps = JdbcHelper.prepareStatement(connection, UPDATE_PERSON_SQL);
             ps.setString(1, userDto.getFullName());
             ps.setString(2, userDto.getTitle());
             ps.setInt(3, userDto.getAge());
             ps.setLong(4, userId);
-            ps.executeUpdate();
+            if (ps.executeUpdate() == 0) {
+                throw new NotFoundException(String.format("User with id %d not found", userId));
+            }
             log.info("User updated: {}", userId);
 
         } catch (SQLException exc) {
             JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("User not updated: " + exc.getMessage(), exc);
         } finally {
             JdbcHelper.closeAll(ps, connection);
         }
-        return getUserById(userId);
+        userDto.setId(userId);
+        return userDto;
     }
 
     /**
@@ -104,8 +179,7 @@ public class UserServiceImplJDBC implements UserService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String SELECT_SQL = "SELECT FULL_NAME, TITLE, AGE FROM PERSON WHERE ID = ?";
-            ps = connection.prepareStatement(SELECT_SQL);
+            ps = JdbcHelper.prepareStatement(connection, SELECT_PERSON_SQL);
             ps.setLong(1, userId);
 
             resultSet = ps.executeQuery();
@@ -130,6 +204,48 @@ public class UserServiceImplJDBC implements UserService {
         return userDto;
     }
 
+    /**
+     * The LEFT JOIN gives one row per book, a single row with a null book id
+     * for a user without books and no row without the user.
+     */
+    @Override
+    public List<Long> getUserWithBookIds(Long userId) {
+        checkUserIdForNull(userId);
+
+        List<Long> bookIds = null;
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, SELECT_BOOK_IDS_OF_USER_SQL);
+            ps.setLong(1, userId);
+
+            resultSet = ps.executeQuery();
+            while (resultSet.next()) {
+                if (bookIds == null) {
+                    bookIds = new ArrayList<>();
+                }
+                long bookId = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    bookIds.add(bookId);
+                }
+            }
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+        } finally {
+            JdbcHelper.closeAll(resultSet, ps, connection);
+        }
+
+        if (bookIds == null) {
+            throw new NotFoundException(String.format("User with id %d not found", userId));
+        }
+        log.info("Book ids of user {}: {}", userId, bookIds);
+        return bookIds;
+    }
+
     @Override
     public void deleteUserById(Long userId) {
         checkUserIdForNull(userId);
@@ -140,16 +256,117 @@ public class UserServiceImplJDBC implements UserService {
         try {
             connection = JdbcHelper.activateConnection();
 
-            final String DELETE_SQL = "DELETE FROM PERSON WHERE ID = ?";
-            ps = connection.prepareStatement(DELETE_SQL);
+            ps = JdbcHelper.prepareStatement(connection, DELETE_PERSON_SQL);
             ps.setLong(1, userId);
             ps.executeUpdate();
             log.info("User deleted: {}", userId);
 
         } catch (SQLException exc) {
             JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("User not deleted: " + exc.getMessage(), exc);
         } finally {
             JdbcHelper.closeAll(ps, connection);
         }
     }
+
+    @Override
+    public void forEachUserWithBookIds(long afterUserId, BiConsumer<Long, List<Long>> action) {
+        UserBookIdsGrouper grouper = new UserBookIdsGrouper(action);
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, SELECT_USER_BOOK_IDS_SQL);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            ps.setLong(1, afterUserId);
+
+            resultSet = ps.executeQuery();
+            while (resultSet.next()) {
+                long userId = resultSet.getLong(1);
+                long bookId = resultSet.getLong(2);
+                grouper.accept(userId, resultSet.wasNull() ? null : bookId);
+            }
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Users not streamed after id " + afterUserId + ": " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(resultSet, ps, connection);
+        }
+        log.info("Users streamed after id {}: {}", afterUserId, grouper.finish());
+    }
+
+    /**
+     * One query of users joined to books per MULTI_GET_CHUNK_SIZE ids, bound as one array,
+     * so every chunk runs the same cached statement.
+     */
+    @Override
+    public Map<Long, List<Long>> getUsersWithBookIds(Collection<Long> userIds) {
+        checkUserIdsForNull(userIds);
+
+        List<Long> idList = userIds.stream().distinct().sorted().toList();
+        Map<Long, List<Long>> users = new LinkedHashMap<>();
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, SELECT_USERS_BOOK_IDS_SQL);
+            for (int from = 0; from < idList.size(); from += MULTI_GET_CHUNK_SIZE) {
+                List<Long> chunk = idList.subList(from, Math.min(from + MULTI_GET_CHUNK_SIZE, idList.size()));
+                ps.setArray(1, connection.createArrayOf("BIGINT", chunk.toArray()));
+
+                UserBookIdsGrouper grouper = new UserBookIdsGrouper(users::put);
+                resultSet = ps.executeQuery();
+                while (resultSet.next()) {
+                    long userId = resultSet.getLong(1);
+                    long bookId = resultSet.getLong(2);
+                    grouper.accept(userId, resultSet.wasNull() ? null : bookId);
+                }
+                resultSet.close();
+                grouper.finish();
+            }
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+            throw new IllegalStateException("Users not read: " + exc.getMessage(), exc);
+        } finally {
+            JdbcHelper.closeAll(resultSet, ps, connection);
+        }
+        log.info("Users found: {} of {}", users.size(), idList.size());
+        return users;
+    }
+
+    /**
+     * One value of PERSON_SEQ stands for the block of USER_ID_BLOCK_SIZE ids starting with it,
+     * as for the pooled-lo optimizer of the ORM backend.
+     */
+    private long reserveUserIds() {
+        long firstId = 0;
+        Connection connection = null;
+        PreparedStatement ps = null;
+        ResultSet resultSet = null;
+
+        try {
+            connection = JdbcHelper.activateConnection();
+
+            ps = JdbcHelper.prepareStatement(connection, RESERVE_USER_IDS_SQL);
+            resultSet = ps.executeQuery();
+            if (resultSet.next()) {
+                firstId = resultSet.getLong(1);
+            }
+        } catch (SQLException exc) {
+            JdbcHelper.handleSqlException(exc);
+        } finally {
+            JdbcHelper.closeAll(resultSet, ps, connection);
+        }
+        if (firstId == 0) {
+            throw new IllegalStateException("No value read from PERSON_SEQ");
+        }
+        log.info("User ids reserved from: {}", firstId);
+        return firstId;
+    }
 }
@@ -0,0 +1,179 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.service.ReactiveUserService;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.util.IdBlockAllocator;
+import io.r2dbc.spi.Row;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * R2DBC implementation of the reactive profile.
+ * Statements join the reactive transaction of ReactiveUnitOfWork when there is one,
+ * otherwise each of them takes its own connection from the R2DBC pool.
+ */
+@Slf4j
+@Service
+@Profile("reactive")
+public class UserServiceImplR2dbc implements ReactiveUserService {
+    private static final String INSERT_PERSON_SQL =
+            "INSERT INTO PERSON(ID, FULL_NAME, TITLE, AGE) VALUES (:id, :fullName, :title, :age)";
+    private static final String RESERVE_USER_IDS_SQL = "SELECT NEXT VALUE FOR PERSON_SEQ";
+    private static final String UPDATE_PERSON_SQL =
+            "UPDATE PERSON SET FULL_NAME = :fullName, TITLE = :title, AGE = :age WHERE ID = :id";
+    private static final String SELECT_PERSON_SQL = "SELECT ID, FULL_NAME, TITLE, AGE FROM PERSON WHERE ID = :id";
+    private static final String SELECT_BOOK_IDS_OF_USER_SQL =
+            "SELECT B.ID AS BOOK_ID FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID WHERE P.ID = :id ORDER BY B.ID";
+    private static final String DELETE_PERSON_SQL = "DELETE FROM PERSON WHERE ID = :id";
+
+    private final DatabaseClient databaseClient;
+    private final IdBlockAllocator userIdBlocks = new IdBlockAllocator(UserService.USER_ID_BLOCK_SIZE);
+
+    public UserServiceImplR2dbc(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * The id is taken from a block reserved from PERSON_SEQ, nothing is read back.
+     */
+    @Override
+    public Mono<UserDto> createUser(UserDto userDto) {
+        return Mono.defer(() -> {
+            checkUserDtoForNull(userDto);
+
+            return nextUserId().flatMap(userId -> bindUser(databaseClient.sql(INSERT_PERSON_SQL), userDto)
+                    .bind("id", userId)
+                    .fetch()
+                    .rowsUpdated()
+                    .map(insertedRows -> {
+                        userDto.setId(userId);
+                        log.info("User created: {}", userId);
+                        return userDto;
+                    }));
+        });
+    }
+
+    /**
+     * The updated row consists of the given details, so it is not selected again.
+     */
+    @Override
+    public Mono<UserDto> updateUser(UserDto userDto, Long userId) {
+        return Mono.defer(() -> {
+            checkUserIdForNull(userId);
+            checkUserDtoForNull(userDto);
+
+            return bindUser(databaseClient.sql(UPDATE_PERSON_SQL), userDto)
+                    .bind("id", userId)
+                    .fetch()
+                    .rowsUpdated()
+                    .flatMap(updatedRows -> {
+                        if (updatedRows == 0) {
+                            return Mono.error(new NotFoundException(String.format("User with id %d not found", userId)));
+                        }
+                        log.info("User updated: {}", userId);
+                        userDto.setId(userId);
+                        return Mono.just(userDto);
+                    });
+        });
+    }
+
+    @Override
+    public Mono<UserDto> getUserById(Long userId) {
+        return Mono.defer(() -> {
+            checkUserIdForNull(userId);
+
+            return databaseClient.sql(SELECT_PERSON_SQL)
+                    .bind("id", userId)
+                    .map(UserServiceImplR2dbc::toUserDto)
+                    .one()
+                    .switchIfEmpty(Mono.error(() ->
+                            new NotFoundException(String.format("User with id %d not found", userId))))
+                    .doOnNext(userDto -> log.info("User found: {}", userId));
+        });
+    }
+
+    /**
+     * The LEFT JOIN gives one row per book, a single row with a null book id
+     * for a user without books and no row without the user.
+     */
+    @Override
+    public Mono<List<Long>> getUserWithBookIds(Long userId) {
+        return Mono.defer(() -> {
+            checkUserIdForNull(userId);
+
+            return databaseClient.sql(SELECT_BOOK_IDS_OF_USER_SQL)
+                    .bind("id", userId)
+                    .map(row -> Optional.ofNullable(row.get("BOOK_ID", Long.class)))
+                    .all()
+                    .collectList()
+                    .flatMap(rows -> {
+                        if (rows.isEmpty()) {
+                            return Mono.error(new NotFoundException(String.format("User with id %d not found", userId)));
+                        }
+                        List<Long> bookIds = rows.stream().flatMap(Optional::stream).toList();
+                        log.info("Book ids of user {}: {}", userId, bookIds);
+                        return Mono.just(bookIds);
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteUserById(Long userId) {
+        return Mono.defer(() -> {
+            checkUserIdForNull(userId);
+
+            return databaseClient.sql(DELETE_PERSON_SQL)
+                    .bind("id", userId)
+                    .fetch()
+                    .rowsUpdated()
+                    .doOnNext(deletedRows -> log.info("User deleted: {}", userId))
+                    .then();
+        });
+    }
+
+    /**
+     * One value of PERSON_SEQ stands for the block of USER_ID_BLOCK_SIZE ids starting with it,
+     * as for the pooled-lo optimizer of the ORM backend. Only a used up block is replaced by a query.
+     */
+    private Mono<Long> nextUserId() {
+        return Mono.defer(() -> {
+            long userId = userIdBlocks.pollId();
+            if (userId != 0) {
+                return Mono.just(userId);
+            }
+            return databaseClient.sql(RESERVE_USER_IDS_SQL)
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .doOnNext(firstId -> log.info("User ids reserved from: {}", firstId))
+                    .map(userIdBlocks::nextIdFrom);
+        });
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindUser(DatabaseClient.GenericExecuteSpec spec, UserDto userDto) {
+        spec = userDto.getFullName() == null
+                ? spec.bindNull("fullName", String.class)
+                : spec.bind("fullName", userDto.getFullName());
+        spec = userDto.getTitle() == null
+                ? spec.bindNull("title", String.class)
+                : spec.bind("title", userDto.getTitle());
+        return spec.bind("age", userDto.getAge());
+    }
+
+    private static UserDto toUserDto(Row row) {
+        UserDto userDto = new UserDto();
+        userDto.setId(row.get("ID", Long.class));
+        userDto.setFullName(row.get("FULL_NAME", String.class));
+        userDto.setTitle(row.get("TITLE", String.class));
+        Integer age = row.get("AGE", Integer.class);
+        userDto.setAge(age == null ? 0 : age);
+        return userDto;
+    }
+}
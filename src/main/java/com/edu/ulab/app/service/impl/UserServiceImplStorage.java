@@ -0,0 +1,158 @@
+package com.edu.ulab.app.service.impl;
+
+import com.edu.ulab.app.dto.UserDto;
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.mapper.UserMapper;
+import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.storage.BookStorage;
+import com.edu.ulab.app.storage.UserStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory storage implementation.
+ * Uses default implementations of checking methods from UserService interface.
+ */
+@Slf4j
+@Service
+public class UserServiceImplStorage implements UserService {
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private final UserStorage userStorage;
+    private final BookStorage bookStorage;
+    private final UserMapper userMapper;
+
+    public UserServiceImplStorage(UserStorage userStorage, BookStorage bookStorage, UserMapper userMapper) {
+        this.userStorage = userStorage;
+        this.bookStorage = bookStorage;
+        this.userMapper = userMapper;
+    }
+
+    @Override
+    public UserDto createUser(UserDto userDto) {
+        checkUserDtoForNull(userDto);
+
+        Person user = userMapper.userDtoToPerson(userDto);
+        log.info("Mapped user (dto -> entity): {}", user);
+        Person savedUser = userStorage.savePerson(user);
+        log.info("Saved user: {}", savedUser);
+        return userMapper.personToUserDto(savedUser);
+    }
+
+    @Override
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        checkUserListForNull(userDtoList);
+
+        List<Person> users = userDtoList
+                .stream()
+                .map(userMapper::userDtoToPerson)
+                .toList();
+        List<UserDto> savedUsers = userStorage
+                .savePersons(users)
+                .stream()
+                .map(userMapper::personToUserDto)
+                .toList();
+        log.info("Saved users: {}", savedUsers.size());
+        return savedUsers;
+    }
+
+    @Override
+    public UserDto updateUser(UserDto userDto, Long userId) {
+        checkUserIdForNull(userId);
+        checkUserDtoForNull(userDto);
+
+        Person updatedUser = userStorage
+                .updatePerson(userId, userMapper.userDtoToPerson(userDto))
+                .orElseThrow(() ->
+                        new NotFoundException(String.format("User with id %d not found", userId)));
+        log.info("User updated: {}", updatedUser);
+        return userMapper.personToUserDto(updatedUser);
+    }
+
+    @Override
+    public UserDto getUserById(Long userId) {
+        checkUserIdForNull(userId);
+
+        Person user = userStorage
+                .findPersonById(userId)
+                .orElseThrow(() ->
+                        new NotFoundException(String.format("User with id %d not found", userId)));
+        log.info("User found: {}", user);
+        return userMapper.personToUserDto(user);
+    }
+
+    @Override
+    public List<Long> getUserWithBookIds(Long userId) {
+        checkUserIdForNull(userId);
+
+        if (userStorage.findPersonById(userId).isEmpty()) {
+            throw new NotFoundException(String.format("User with id %d not found", userId));
+        }
+        List<Long> bookIds = bookStorage.findBooksByUserId(userId)
+                .stream()
+                .map(Book::getId)
+                .toList();
+        log.info("Book ids of user {}: {}", userId, bookIds);
+        return bookIds;
+    }
+
+    @Override
+    public void deleteUserById(Long userId) {
+        checkUserIdForNull(userId);
+
+        if (!userStorage.deletePersonById(userId)) {
+            throw new NotFoundException(String.format("User with id %d not found", userId));
+        }
+        log.info("User deleted: {}", userId);
+    }
+
+    /**
+     * Reads user ids page by page, so the storage lock is not held while the action runs.
+     * A user deleted after his page was read is passed without books.
+     */
+    @Override
+    public void forEachUserWithBookIds(long afterUserId, BiConsumer<Long, List<Long>> action) {
+        long lastId = afterUserId;
+        long count = 0;
+        long[] page;
+        do {
+            page = userStorage.findPersonIds(lastId, STREAM_PAGE_SIZE);
+            for (long userId : page) {
+                List<Long> bookIds = bookStorage.findBooksByUserId(userId)
+                        .stream()
+                        .map(Book::getId)
+                        .toList();
+                action.accept(userId, bookIds);
+                lastId = userId;
+                count++;
+            }
+        } while (page.length == STREAM_PAGE_SIZE);
+        log.info("Users streamed after id {}: {}", afterUserId, count);
+    }
+
+    @Override
+    public Map<Long, List<Long>> getUsersWithBookIds(Collection<Long> userIds) {
+        checkUserIdsForNull(userIds);
+
+        List<Long> idList = userIds.stream().distinct().sorted().toList();
+        Map<Long, List<Long>> users = new LinkedHashMap<>();
+        for (Long userId : idList) {
+            if (userStorage.findPersonById(userId).isPresent()) {
+                users.put(userId, bookStorage.findBooksByUserId(userId)
+                        .stream()
+                        .map(Book::getId)
+                        .toList());
+            }
+        }
+        log.info("Users found: {} of {}", users.size(), idList.size());
+        return users;
+    }
+}
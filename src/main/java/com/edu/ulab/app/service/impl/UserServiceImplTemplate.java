@@ -4,15 +4,20 @@ import com.edu.ulab.app.dto.UserDto;
 import com.edu.ulab.app.exception.NotFoundException;
 import com.edu.ulab.app.mapper.RowToUserDtoMapper;
 import com.edu.ulab.app.service.UserService;
+import com.edu.ulab.app.util.IdBlockAllocator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 
 /**
  * JDBC Template implementation.
@@ -21,40 +26,76 @@ import java.util.Objects;
 @Slf4j
 @Service
 public class UserServiceImplTemplate implements UserService {
+    private static final int INSERT_CHUNK_SIZE = 100;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int MULTI_GET_CHUNK_SIZE = 500;
+    private static final String INSERT_PERSON_SQL =
+            "INSERT INTO PERSON(ID, FULL_NAME, TITLE, AGE) VALUES (?,?,?,?)";
+    private static final String RESERVE_USER_IDS_SQL = "SELECT NEXT VALUE FOR PERSON_SEQ";
+    private static final String UPDATE_PERSON_SQL =
+            "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ?  WHERE ID = ?";
+    private static final String SELECT_PERSON_SQL = "SELECT * FROM PERSON WHERE ID = ?";
+    private static final String DELETE_PERSON_SQL = "DELETE FROM PERSON WHERE ID = ?";
+    private static final String SELECT_BOOK_IDS_OF_USER_SQL =
+            "SELECT B.ID FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID WHERE P.ID = ? ORDER BY B.ID";
+    private static final String SELECT_USER_BOOK_IDS_SQL =
+            "SELECT P.ID, B.ID FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID "
+                    + "WHERE P.ID > ? ORDER BY P.ID, B.ID";
+    private static final String SELECT_USERS_BOOK_IDS_SQL =
+            "SELECT P.ID, B.ID FROM PERSON P LEFT JOIN BOOK B ON B.USER_ID = P.ID "
+                    + "WHERE P.ID = ANY(?) ORDER BY P.ID, B.ID";
+
     private final JdbcTemplate jdbcTemplate;
+    private final IdBlockAllocator userIdBlocks = new IdBlockAllocator(USER_ID_BLOCK_SIZE);
 
     public UserServiceImplTemplate(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    /**
+     * The id is taken from a block reserved from PERSON_SEQ, nothing is read back.
+     */
     @Override
     public UserDto createUser(UserDto userDto) {
         checkUserDtoForNull(userDto);
 
-        final String INSERT_SQL = "INSERT INTO PERSON(FULL_NAME, TITLE, AGE) VALUES (?,?,?)";
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(
-                connection -> {
-                    PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[]{"id"});
-                    ps.setString(1, userDto.getFullName());
-                    ps.setString(2, userDto.getTitle());
-                    ps.setLong(3, userDto.getAge());
-                    return ps;
-                }, keyHolder);
-
-        userDto.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        long userId = userIdBlocks.nextId(this::reserveUserIds);
+        jdbcTemplate.update(INSERT_PERSON_SQL, userId, userDto.getFullName(), userDto.getTitle(), userDto.getAge());
+        userDto.setId(userId);
         return userDto;
     }
 
+    /**
+     * The ids are taken from blocks reserved from PERSON_SEQ,
+     * so the inserts go out as JDBC batches of INSERT_CHUNK_SIZE rows without reading keys.
+     */
+    @Override
+    @Transactional
+    public List<UserDto> createUsers(List<UserDto> userDtoList) {
+        checkUserListForNull(userDtoList);
+
+        userDtoList.forEach(userDto -> userDto.setId(userIdBlocks.nextId(this::reserveUserIds)));
+        jdbcTemplate.batchUpdate(INSERT_PERSON_SQL, userDtoList, INSERT_CHUNK_SIZE, (ps, userDto) -> {
+            ps.setLong(1, userDto.getId());
+            ps.setString(2, userDto.getFullName());
+            ps.setString(3, userDto.getTitle());
+            ps.setLong(4, userDto.getAge());
+        });
+        log.info("Users created in batch: {}", userDtoList.size());
+        return userDtoList;
+    }
+
+    /**
+     * The updated row consists of the given details, so it is not selected again.
+     */
     @Override
     public UserDto updateUser(UserDto userDto, Long userId) {
         checkUserIdForNull(userId);
         checkUserDtoForNull(userDto);
 
-        final String UPDATE_SQL = "UPDATE PERSON SET FULL_NAME = ?, TITLE = ?, AGE = ?  WHERE ID = ?";
-        jdbcTemplate.update(
+        int updatedRows = jdbcTemplate.update(
                 connection -> {
-                    PreparedStatement ps = connection.prepareStatement(UPDATE_SQL);
+                    PreparedStatement ps = connection.prepareStatement(UPDATE_PERSON_SQL);
                     ps.setString(1, userDto.getFullName());
                     ps.setString(2, userDto.getTitle());
                     ps.setInt(3, userDto.getAge());
@@ -62,17 +103,20 @@ public class UserServiceImplTemplate implements UserService {
                     return ps;
                 }
         );
+        if (updatedRows == 0) {
+            throw new NotFoundException(String.format("User with id %d not found", userId));
+        }
         log.info("User updated: {}", userId);
-        return getUserById(userId);
+        userDto.setId(userId);
+        return userDto;
     }
 
     @Override
     public UserDto getUserById(Long userId) {
         checkUserIdForNull(userId);
 
-        final String SELECT_SQL = "SELECT * FROM PERSON WHERE ID = ?";
         List<UserDto> userList = jdbcTemplate.query(
-                SELECT_SQL, preparedStatement -> preparedStatement.setLong(1, userId),
+                SELECT_PERSON_SQL, preparedStatement -> preparedStatement.setLong(1, userId),
                 new RowToUserDtoMapper());
 
         if (userList.size() == 0) {
@@ -82,18 +126,91 @@ public class UserServiceImplTemplate implements UserService {
         return userList.get(0);
     }
 
+    /**
+     * The LEFT JOIN gives one row per book, a single row with a null book id
+     * for a user without books and no row without the user.
+     */
+    @Override
+    public List<Long> getUserWithBookIds(Long userId) {
+        checkUserIdForNull(userId);
+
+        List<Long> bookIds = jdbcTemplate.query(
+                SELECT_BOOK_IDS_OF_USER_SQL, preparedStatement -> preparedStatement.setLong(1, userId),
+                (resultSet, rowNum) -> {
+                    long bookId = resultSet.getLong(1);
+                    return resultSet.wasNull() ? null : bookId;
+                });
+
+        if (bookIds.isEmpty()) {
+            throw new NotFoundException(String.format("User with id %d not found", userId));
+        }
+        log.info("Book ids of user {}: {}", userId, bookIds);
+        return bookIds.get(0) == null ? List.of() : bookIds;
+    }
+
     @Override
     public void deleteUserById(Long userId) {
         checkUserIdForNull(userId);
 
-        final String DELETE_SQL = "DELETE FROM PERSON WHERE ID = ?";
         jdbcTemplate.update(
                 connection -> {
-                    PreparedStatement ps = connection.prepareStatement(DELETE_SQL);
+                    PreparedStatement ps = connection.prepareStatement(DELETE_PERSON_SQL);
                     ps.setLong(1, userId);
                     return ps;
                 }
         );
         log.info("User deleted: {}", userId);
     }
+
+    @Override
+    public void forEachUserWithBookIds(long afterUserId, BiConsumer<Long, List<Long>> action) {
+        UserBookIdsGrouper grouper = new UserBookIdsGrouper(action);
+        jdbcTemplate.query(
+                SELECT_USER_BOOK_IDS_SQL,
+                preparedStatement -> {
+                    preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+                    preparedStatement.setLong(1, afterUserId);
+                },
+                (RowCallbackHandler) resultSet -> {
+                    long userId = resultSet.getLong(1);
+                    long bookId = resultSet.getLong(2);
+                    grouper.accept(userId, resultSet.wasNull() ? null : bookId);
+                });
+        log.info("Users streamed after id {}: {}", afterUserId, grouper.finish());
+    }
+
+    /**
+     * One query of users joined to books per MULTI_GET_CHUNK_SIZE ids, bound as one array.
+     */
+    @Override
+    public Map<Long, List<Long>> getUsersWithBookIds(Collection<Long> userIds) {
+        checkUserIdsForNull(userIds);
+
+        List<Long> idList = userIds.stream().distinct().sorted().toList();
+        Map<Long, List<Long>> users = new LinkedHashMap<>();
+        for (int from = 0; from < idList.size(); from += MULTI_GET_CHUNK_SIZE) {
+            List<Long> chunk = idList.subList(from, Math.min(from + MULTI_GET_CHUNK_SIZE, idList.size()));
+            UserBookIdsGrouper grouper = new UserBookIdsGrouper(users::put);
+            jdbcTemplate.query(
+                    SELECT_USERS_BOOK_IDS_SQL,
+                    preparedStatement -> preparedStatement.setArray(1,
+                            preparedStatement.getConnection().createArrayOf("BIGINT", chunk.toArray())),
+                    (RowCallbackHandler) resultSet -> {
+                        long userId = resultSet.getLong(1);
+                        long bookId = resultSet.getLong(2);
+                        grouper.accept(userId, resultSet.wasNull() ? null : bookId);
+                    });
+            grouper.finish();
+        }
+        log.info("Users found: {} of {}", users.size(), idList.size());
+        return users;
+    }
+
+    /**
+     * One value of PERSON_SEQ stands for the block of USER_ID_BLOCK_SIZE ids starting with it,
+     * as for the pooled-lo optimizer of the ORM backend.
+     */
+    private long reserveUserIds() {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject(RESERVE_USER_IDS_SQL, Long.class));
+    }
 }
@@ -0,0 +1,254 @@
+package com.edu.ulab.app.service.routing;
+
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.exception.WrongBookException;
+import com.edu.ulab.app.exception.WrongUserException;
+import com.edu.ulab.app.util.MethodMetricsInterceptor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Sends every call of a service interface to one of several implementations of it, the backends, chosen per operation.
+ * An operation is named like the method tag of service.calls: the method name,
+ * with the parameter count appended for overloaded methods (getBooksByUserId/3).
+ * <p>
+ * Pinned operations always go to their backend. The others go to the default backend,
+ * or in adaptive mode to the candidate with the lowest moving average latency of successful calls.
+ * A share of exploreRate calls goes to a random candidate, so the averages of the others stay current,
+ * candidates not called yet are tried first.
+ * A failed call drops the average of its candidate, it gets calls only by exploration until one succeeds,
+ * so a failing backend is not preferred however fast it was. NotFoundException and the rejections of wrong
+ * details are answers of a working backend, they count as successful calls.
+ * <p>
+ * A route is resolved once per method, a call costs the choice among the candidates and two nanoTime reads.
+ */
+public class ServiceRouter<S> implements MethodInterceptor {
+    private final Class<S> serviceInterface;
+    private final Map<String, S> backends;
+    private final String defaultBackend;
+    private final Map<String, String> pinnedOperations;
+    private final List<String> candidates;
+    private final double exploreRate;
+    private final double smoothing;
+    private final Map<Method, Route> routes = new ConcurrentHashMap<>();
+
+    /**
+     * candidates empty turns the adaptive mode off.
+     */
+    public ServiceRouter(Class<S> serviceInterface,
+                         Map<String, S> backends,
+                         String defaultBackend,
+                         Map<String, String> pinnedOperations,
+                         List<String> candidates,
+                         double exploreRate,
+                         double smoothing) {
+        if (!backends.containsKey(defaultBackend)) {
+            throw new IllegalArgumentException("Unknown default backend: " + defaultBackend);
+        }
+        Set<String> operations = Arrays.stream(serviceInterface.getMethods())
+                .map(MethodMetricsInterceptor::tagValue)
+                .collect(Collectors.toSet());
+        pinnedOperations.forEach((operation, backend) -> {
+            if (!operations.contains(operation)) {
+                throw new IllegalArgumentException("Unknown operation of " + serviceInterface.getSimpleName() + ": " + operation);
+            }
+            if (!backends.containsKey(backend)) {
+                throw new IllegalArgumentException("Unknown backend of " + operation + ": " + backend);
+            }
+        });
+        candidates.forEach(candidate -> {
+            if (!backends.containsKey(candidate)) {
+                throw new IllegalArgumentException("Unknown candidate backend: " + candidate);
+            }
+        });
+        if (exploreRate < 0 || exploreRate > 1 || smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("exploreRate must be between 0 and 1, smoothing above 0 and at most 1");
+        }
+        this.serviceInterface = serviceInterface;
+        this.backends = Map.copyOf(backends);
+        this.defaultBackend = defaultBackend;
+        this.pinnedOperations = Map.copyOf(pinnedOperations);
+        this.candidates = List.copyOf(candidates);
+        this.exploreRate = exploreRate;
+        this.smoothing = smoothing;
+    }
+
+    public S proxy() {
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.addInterface(serviceInterface);
+        proxyFactory.addAdvice(this);
+        return serviceInterface.cast(proxyFactory.getProxy());
+    }
+
+    public String serviceName() {
+        return serviceInterface.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        Route route = routes.computeIfAbsent(method, this::route);
+        BackendStats stats = route.select();
+
+        long started = System.nanoTime();
+        try {
+            Object result = AopUtils.invokeJoinpointUsingReflection(
+                    backends.get(stats.backend), method, invocation.getArguments());
+            stats.succeeded(System.nanoTime() - started);
+            return result;
+        } catch (NotFoundException | WrongUserException | WrongBookException exc) {
+            stats.succeeded(System.nanoTime() - started);
+            throw exc;
+        } catch (Throwable exc) {
+            stats.failed();
+            throw exc;
+        }
+    }
+
+    /**
+     * Operations called so far, by name.
+     */
+    public Map<String, RouteView> routes() {
+        Map<String, RouteView> result = new TreeMap<>();
+        routes.values().forEach(route -> result.put(route.operation, route.view()));
+        return result;
+    }
+
+    /**
+     * Forgets the statistics, adaptive routes start over by trying every candidate.
+     */
+    public void reset() {
+        routes.clear();
+    }
+
+    private Route route(Method method) {
+        String operation = MethodMetricsInterceptor.tagValue(method);
+        String pinned = pinnedOperations.get(operation);
+        if (pinned != null) {
+            return new Route(operation, "pinned", List.of(pinned));
+        }
+        if (candidates.isEmpty()) {
+            return new Route(operation, "default", List.of(defaultBackend));
+        }
+        return new Route(operation, "adaptive", candidates);
+    }
+
+    private final class Route {
+        private final String operation;
+        private final String mode;
+        private final List<BackendStats> stats;
+
+        private Route(String operation, String mode, List<String> routeBackends) {
+            this.operation = operation;
+            this.mode = mode;
+            this.stats = routeBackends.stream().map(BackendStats::new).toList();
+        }
+
+        private BackendStats select() {
+            if (stats.size() == 1) {
+                return stats.get(0);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (exploreRate > 0 && random.nextDouble() < exploreRate) {
+                return stats.get(random.nextInt(stats.size()));
+            }
+            BackendStats fastest = null;
+            for (BackendStats candidate : stats) {
+                if (candidate.attempts() == 0) {
+                    return candidate;
+                }
+                double average = candidate.averageNanos();
+                if (!Double.isNaN(average) && (fastest == null || average < fastest.averageNanos())) {
+                    fastest = candidate;
+                }
+            }
+            return fastest != null ? fastest : stats.get(random.nextInt(stats.size()));
+        }
+
+        private RouteView view() {
+            Map<String, BackendView> views = new LinkedHashMap<>();
+            List<BackendStats> sampled = new ArrayList<>();
+            for (BackendStats backendStats : stats) {
+                views.put(backendStats.backend, backendStats.view());
+                if (!Double.isNaN(backendStats.averageNanos())) {
+                    sampled.add(backendStats);
+                }
+            }
+            String preferred = stats.size() == 1 ? stats.get(0).backend : sampled.stream()
+                    .min((first, second) -> Double.compare(first.averageNanos(), second.averageNanos()))
+                    .map(backendStats -> backendStats.backend)
+                    .orElse(null);
+            return new RouteView(mode, preferred, views);
+        }
+    }
+
+    /**
+     * The moving average is updated with a compare-and-set of its bits, without a lock.
+     */
+    private final class BackendStats {
+        private final String backend;
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final AtomicLong averageBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+
+        private BackendStats(String backend) {
+            this.backend = backend;
+        }
+
+        private void succeeded(long nanos) {
+            successes.increment();
+            averageBits.updateAndGet(bits -> {
+                double average = Double.longBitsToDouble(bits);
+                return Double.doubleToRawLongBits(Double.isNaN(average) ? nanos : average + smoothing * (nanos - average));
+            });
+        }
+
+        private void failed() {
+            failures.increment();
+            averageBits.set(Double.doubleToRawLongBits(Double.NaN));
+        }
+
+        private long attempts() {
+            return successes.sum() + failures.sum();
+        }
+
+        private double averageNanos() {
+            return Double.longBitsToDouble(averageBits.get());
+        }
+
+        private BackendView view() {
+            double average = averageNanos();
+            return new BackendView(successes.sum(), failures.sum(),
+                    Double.isNaN(average) ? -1 : average / TimeUnit.MICROSECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * preferred is the backend an adaptive route sends its calls to, null while no candidate has an average.
+     */
+    public record RouteView(String mode, String preferred, Map<String, BackendView> backends) {
+    }
+
+    /**
+     * averageMicros is the moving average of the successful calls since the last failure, -1 without one.
+     */
+    public record BackendView(long successes, long failures, double averageMicros) {
+    }
+}
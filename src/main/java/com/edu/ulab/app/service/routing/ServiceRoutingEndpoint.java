@@ -0,0 +1,35 @@
+package com.edu.ulab.app.service.routing;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * /actuator/servicerouting: the route of every operation called so far, by service,
+ * with the calls and the moving average latency of each of its backends.
+ * DELETE resets the statistics.
+ */
+@Endpoint(id = "servicerouting")
+public class ServiceRoutingEndpoint {
+    private final List<ServiceRouter<?>> routers;
+
+    public ServiceRoutingEndpoint(List<ServiceRouter<?>> routers) {
+        this.routers = routers;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, ServiceRouter.RouteView>> routes() {
+        Map<String, Map<String, ServiceRouter.RouteView>> result = new TreeMap<>();
+        routers.forEach(router -> result.put(router.serviceName(), router.routes()));
+        return result;
+    }
+
+    @DeleteOperation
+    public void reset() {
+        routers.forEach(ServiceRouter::reset);
+    }
+}
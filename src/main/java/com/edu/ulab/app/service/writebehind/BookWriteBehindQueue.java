@@ -0,0 +1,292 @@
+package com.edu.ulab.app.service.writebehind;
+
+import com.edu.ulab.app.dto.BookDto;
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.util.IdBlockAllocator;
+import com.edu.ulab.app.util.UnitOfWork;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Write-behind of created books. enqueue() gives the book an id from a block reserved with
+ * BookService.reserveBookIds and returns at once, the flusher thread inserts the queued books
+ * with BookService.createBooksWithIds, one transaction per batch (group commit).
+ * A batch is written once batchSize books are queued, or flushInterval after its oldest book was queued.
+ * <p>
+ * Until a book is written, pendingBook() returns it, awaitUser() and awaitBook() flush at once
+ * and wait for the books of a user or for one book, so the reads that follow see them in the database.
+ * Waiting inside a unit of work would hold a connection the flusher may need, callers wait before.
+ * A wait is bounded by drainTimeout, then RejectedExecutionException is thrown and the request is answered with 503.
+ * <p>
+ * A failed batch is retried book by book, a book failing alone (e.g. its user was deleted meanwhile)
+ * is dropped, logged and counted as book.write-behind.failed.
+ * At most capacity books wait, enqueue() beyond that throws RejectedExecutionException.
+ * close() stops accepting books and writes the queued ones before it returns.
+ */
+@Slf4j
+public class BookWriteBehindQueue {
+    private final BookService bookService;
+    private final UnitOfWork unitOfWork;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Duration drainTimeout;
+    private final Thread flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queued = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private final ArrayDeque<QueuedBook> queue = new ArrayDeque<>();
+    private boolean flushRequested;
+    private boolean closed;
+
+    private final Map<Long, BookDto> pendingBooks = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> pendingBooksByUser = new ConcurrentHashMap<>();
+
+    private final IdBlockAllocator idBlocks = new IdBlockAllocator(BookService.BOOK_ID_BLOCK_SIZE);
+
+    private final Timer flushTimer;
+    private final Timer lagTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter rejected;
+    private final Counter failed;
+    private final Counter waitTimeouts;
+
+    public BookWriteBehindQueue(BookService bookService,
+                                UnitOfWork unitOfWork,
+                                int capacity,
+                                int batchSize,
+                                Duration flushInterval,
+                                Duration drainTimeout,
+                                MeterRegistry meterRegistry) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        this.bookService = bookService;
+        this.unitOfWork = unitOfWork;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.drainTimeout = drainTimeout;
+        this.flusher = new Thread(this::flushQueued, "book-write-behind");
+
+        this.flushTimer = Timer.builder("book.write-behind.flush")
+                .description("Time to write one batch of queued books")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("book.write-behind.lag")
+                .description("Time from queuing a book to its commit")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("book.write-behind.batch.size")
+                .description("Books written in one transaction")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("book.write-behind.rejected")
+                .description("Books rejected because the write-behind queue was full")
+                .register(meterRegistry);
+        this.failed = Counter.builder("book.write-behind.failed")
+                .description("Queued books dropped because they could not be written")
+                .register(meterRegistry);
+        this.waitTimeouts = Counter.builder("book.write-behind.wait.timeouts")
+                .description("Waits for queued books given up after the drain timeout")
+                .register(meterRegistry);
+        Gauge.builder("book.write-behind.queue.depth", pendingBooks, Map::size)
+                .description("Books acknowledged but not written yet")
+                .register(meterRegistry);
+    }
+
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * Sets the id of the book and queues it, the book is not checked against the database.
+     */
+    public BookDto enqueue(BookDto bookDto) {
+        bookService.checkBookDtoForNull(bookDto);
+        bookDto.setId(idBlocks.nextId(bookService::reserveBookIds));
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("Book write-behind queue is closed");
+            }
+            if (queue.size() >= capacity) {
+                rejected.increment();
+                throw new RejectedExecutionException("Book write-behind queue is full");
+            }
+            queue.add(new QueuedBook(bookDto, System.nanoTime()));
+            pendingBooks.put(bookDto.getId(), bookDto);
+            if (bookDto.getUserId() != null) {
+                pendingBooksByUser.merge(bookDto.getUserId(), 1, Integer::sum);
+            }
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Book queued: {}", bookDto.getId());
+        return bookDto;
+    }
+
+    /**
+     * Returns the book if it is queued and not written yet, null otherwise.
+     * Callers look here before reading the database: a book written meanwhile is found there.
+     */
+    public BookDto pendingBook(Long bookId) {
+        return pendingBooks.get(bookId);
+    }
+
+    public void awaitUser(Long userId) {
+        if (userId != null && pendingBooksByUser.containsKey(userId)) {
+            awaitWritten(() -> pendingBooksByUser.containsKey(userId));
+        }
+    }
+
+    public void awaitBook(Long bookId) {
+        if (bookId != null && pendingBooks.containsKey(bookId)) {
+            awaitWritten(() -> pendingBooks.containsKey(bookId));
+        }
+    }
+
+    public void awaitAll() {
+        if (!pendingBooks.isEmpty()) {
+            awaitWritten(() -> !pendingBooks.isEmpty());
+        }
+    }
+
+    /**
+     * Writes the queued books and stops the flusher, waiting at most drainTimeout.
+     */
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join(drainTimeout.toMillis());
+        if (flusher.isAlive()) {
+            log.warn("Book write-behind queue not drained in {}, books not written: {}",
+                    drainTimeout, pendingBooks.size());
+        } else {
+            log.info("Book write-behind queue drained");
+        }
+    }
+
+    private void awaitWritten(BooleanSupplier pending) {
+        lock.lock();
+        try {
+            long remaining = drainTimeout.toNanos();
+            while (pending.getAsBoolean()) {
+                if (remaining <= 0) {
+                    waitTimeouts.increment();
+                    throw new RejectedExecutionException("Queued books not written in " + drainTimeout);
+                }
+                flushRequested = true;
+                queued.signal();
+                remaining = written.awaitNanos(remaining);
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for queued books", exc);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushQueued() {
+        List<QueuedBook> batch = new ArrayList<>(batchSize);
+        try {
+            while (takeBatch(batch)) {
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException exc) {
+            log.warn("Book write-behind flusher interrupted, books not written: {}", pendingBooks.size());
+        }
+    }
+
+    /**
+     * Waits for a full batch, the flush interval of the oldest book, a waiting reader or close.
+     * Returns false once the queue is closed and empty.
+     */
+    private boolean takeBatch(List<QueuedBook> batch) throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (closed) {
+                    return false;
+                }
+                queued.await();
+            }
+            long remaining = queue.peek().queuedNanos() + flushIntervalNanos - System.nanoTime();
+            while (queue.size() < batchSize && !flushRequested && !closed && remaining > 0) {
+                remaining = queued.awaitNanos(remaining);
+            }
+            flushRequested = false;
+            while (batch.size() < batchSize && !queue.isEmpty()) {
+                batch.add(queue.poll());
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(List<QueuedBook> batch) {
+        List<BookDto> books = batch.stream().map(QueuedBook::book).toList();
+        long started = System.nanoTime();
+        try {
+            unitOfWork.run(() -> bookService.createBooksWithIds(books));
+        } catch (RuntimeException exc) {
+            log.warn("Batch of {} queued books failed, writing them one by one: {}", books.size(), exc.getMessage());
+            books.forEach(this::writeAlone);
+        }
+        long committed = System.nanoTime();
+        flushTimer.record(committed - started, TimeUnit.NANOSECONDS);
+        batchSizes.record(books.size());
+        batch.forEach(queuedBook -> lagTimer.record(committed - queuedBook.queuedNanos(), TimeUnit.NANOSECONDS));
+
+        lock.lock();
+        try {
+            for (BookDto book : books) {
+                pendingBooks.remove(book.getId());
+                if (book.getUserId() != null) {
+                    pendingBooksByUser.computeIfPresent(book.getUserId(),
+                            (userId, count) -> count == 1 ? null : count - 1);
+                }
+            }
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        log.info("Queued books written: {}", books.size());
+    }
+
+    private void writeAlone(BookDto book) {
+        try {
+            unitOfWork.run(() -> bookService.createBooksWithIds(List.of(book)));
+        } catch (RuntimeException exc) {
+            failed.increment();
+            log.error("Queued book dropped: {}, {}", book, exc.getMessage());
+        }
+    }
+
+    private record QueuedBook(BookDto book, long queuedNanos) {
+    }
+}
@@ -0,0 +1,29 @@
+package com.edu.ulab.app.storage;
+
+import com.edu.ulab.app.entity.Book;
+
+/**
+ * Immutable stored form of a book, so callers can't change the storage through returned entities.
+ * A book without owner has userId {@link #NO_USER}.
+ */
+record BookRecord(long id, long userId, String title, String author, long pageCount) {
+    static final long NO_USER = 0L;
+
+    static BookRecord of(long id, long userId, Book book) {
+        return new BookRecord(id, userId, book.getTitle(), book.getAuthor(), book.getPageCount());
+    }
+
+    boolean hasUser() {
+        return userId != NO_USER;
+    }
+
+    Book toBook() {
+        Book book = new Book();
+        book.setId(id);
+        book.setUserId(hasUser() ? userId : null);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setPageCount(pageCount);
+        return book;
+    }
+}
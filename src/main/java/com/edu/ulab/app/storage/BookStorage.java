@@ -0,0 +1,53 @@
+package com.edu.ulab.app.storage;
+
+import com.edu.ulab.app.entity.Book;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Operations with books in the in-memory storage.
+ */
+public interface BookStorage {
+    /**
+     * Generates an id for the book and stores it.
+     * The book's user must exist, if it is set.
+     */
+    Book saveBook(Book book);
+
+    /**
+     * Stores all books atomically: either every book is stored or none.
+     */
+    List<Book> saveBooks(List<Book> newBooks);
+
+    /**
+     * Reserves count consecutive ids for saveBooksWithIds, returns the first one.
+     */
+    long reserveBookIds(int count);
+
+    /**
+     * Stores all books atomically under the ids they carry, reserved with reserveBookIds.
+     */
+    List<Book> saveBooksWithIds(List<Book> newBooks);
+
+    Optional<Book> findBookById(long id);
+
+    /**
+     * Replaces the book's details except of the owner, returns empty if there is no such book.
+     */
+    Optional<Book> updateBook(long id, Book book);
+
+    /**
+     * Uses the user -> books index, so costs O(books of the user).
+     */
+    List<Book> findBooksByUserId(long userId);
+
+    /**
+     * Keyset page: up to limit books of the user with id greater than afterId, ordered by id.
+     */
+    List<Book> findBooksByUserId(long userId, long afterId, int limit);
+
+    boolean deleteBookById(long id);
+
+    int deleteBooksByUserId(long userId);
+}
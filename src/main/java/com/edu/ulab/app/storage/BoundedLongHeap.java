@@ -0,0 +1,69 @@
+package com.edu.ulab.app.storage;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the limit smallest values offered to it in a max-heap,
+ * so selecting them from n values costs O(n * log(limit)) without sorting all of them.
+ */
+final class BoundedLongHeap {
+    private final long[] heap;
+    private int size;
+
+    BoundedLongHeap(int limit) {
+        heap = new long[limit];
+    }
+
+    void offer(long value) {
+        if (size < heap.length) {
+            heap[size] = value;
+            siftUp(size++);
+        } else if (size > 0 && value < heap[0]) {
+            heap[0] = value;
+            siftDown();
+        }
+    }
+
+    long[] toSortedArray() {
+        long[] result = Arrays.copyOf(heap, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void siftUp(int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (heap[parent] >= heap[pos]) {
+                return;
+            }
+            swap(parent, pos);
+            pos = parent;
+        }
+    }
+
+    private void siftDown() {
+        int pos = 0;
+        while (true) {
+            int largest = pos;
+            int left = 2 * pos + 1;
+            int right = left + 1;
+            if (left < size && heap[left] > heap[largest]) {
+                largest = left;
+            }
+            if (right < size && heap[right] > heap[largest]) {
+                largest = right;
+            }
+            if (largest == pos) {
+                return;
+            }
+            swap(pos, largest);
+            pos = largest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+}
@@ -0,0 +1,32 @@
+package com.edu.ulab.app.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free identifier sequence, ids start from 1.
+ */
+final class IdGenerator {
+    private final AtomicLong lastId = new AtomicLong();
+
+    long nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * Hands out count consecutive ids at once, returns the first one.
+     */
+    long reserve(int count) {
+        return lastId.getAndAdd(count) + 1;
+    }
+
+    long lastId() {
+        return lastId.get();
+    }
+
+    /**
+     * Makes sure the next generated id is greater than the given one.
+     */
+    void advanceTo(long id) {
+        lastId.accumulateAndGet(id, Math::max);
+    }
+}
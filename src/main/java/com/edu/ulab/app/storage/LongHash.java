@@ -0,0 +1,17 @@
+package com.edu.ulab.app.storage;
+
+final class LongHash {
+    private static final long PHI = 0x9E3779B97F4A7C15L;
+
+    private LongHash() {
+    }
+
+    /**
+     * Spreads sequential ids over the table, they are the common key pattern here.
+     */
+    static int mix(long key) {
+        long h = key * PHI;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+}
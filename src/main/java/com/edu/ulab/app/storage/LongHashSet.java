@@ -0,0 +1,175 @@
+package com.edu.ulab.app.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of primitive longs, same layout as {@link LongKeyedMap}.
+ * Not thread-safe: access is guarded by {@link Storage}.
+ */
+final class LongHashSet {
+    private static final long FREE_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+    private boolean hasFreeKey;
+
+    LongHashSet(int expectedSize) {
+        allocate(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR)));
+    }
+
+    int size() {
+        return hasFreeKey ? size + 1 : size;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    boolean contains(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        int pos = slot(key);
+        while (true) {
+            long current = keys[pos];
+            if (current == FREE_KEY) {
+                return false;
+            }
+            if (current == key) {
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    boolean add(long key) {
+        if (key == FREE_KEY) {
+            boolean added = !hasFreeKey;
+            hasFreeKey = true;
+            return added;
+        }
+        int pos = slot(key);
+        while (true) {
+            long current = keys[pos];
+            if (current == FREE_KEY) {
+                keys[pos] = key;
+                if (++size >= resizeThreshold) {
+                    rehash(keys.length << 1);
+                }
+                return true;
+            }
+            if (current == key) {
+                return false;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    boolean remove(long key) {
+        if (key == FREE_KEY) {
+            boolean removed = hasFreeKey;
+            hasFreeKey = false;
+            return removed;
+        }
+        int pos = slot(key);
+        while (true) {
+            long current = keys[pos];
+            if (current == FREE_KEY) {
+                return false;
+            }
+            if (current == key) {
+                shiftKeys(pos);
+                size--;
+                return true;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the elements in ascending order, the order in which books were created.
+     */
+    long[] toSortedArray() {
+        long[] result = new long[size()];
+        int i = 0;
+        if (hasFreeKey) {
+            result[i++] = FREE_KEY;
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY) {
+                result[i++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns up to limit smallest elements greater than after, in ascending order.
+     */
+    long[] firstAfter(long after, int limit) {
+        BoundedLongHeap heap = new BoundedLongHeap(Math.min(limit, size()));
+        if (hasFreeKey && FREE_KEY > after) {
+            heap.offer(FREE_KEY);
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY && key > after) {
+                heap.offer(key);
+            }
+        }
+        return heap.toSortedArray();
+    }
+
+    private void shiftKeys(int pos) {
+        int last;
+        long current;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                current = keys[pos];
+                if (current == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                int home = slot(current);
+                if (last <= pos ? last >= home || home > pos : last >= home && home > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = current;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        allocate(capacity);
+        for (long key : oldKeys) {
+            if (key != FREE_KEY) {
+                int pos = slot(key);
+                while (keys[pos] != FREE_KEY) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        return LongHash.mix(key) & mask;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+    }
+}
@@ -0,0 +1,218 @@
+package com.edu.ulab.app.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map with primitive long keys.
+ * Linear probing with backward-shift deletion, so there are no tombstones
+ * and no boxed keys or entry objects.
+ * Not thread-safe: access is guarded by {@link Storage}.
+ */
+final class LongKeyedMap<V> {
+    private static final long FREE_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int resizeThreshold;
+    private int size;
+
+    /**
+     * Key 0 marks a free slot in the table, so its value is kept aside.
+     */
+    private boolean hasFreeKey;
+    private V freeKeyValue;
+
+    LongKeyedMap(int expectedSize) {
+        allocate(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR)));
+    }
+
+    int size() {
+        return hasFreeKey ? size + 1 : size;
+    }
+
+    boolean containsKey(long key) {
+        return key == FREE_KEY ? hasFreeKey : indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (key == FREE_KEY) {
+            return freeKeyValue;
+        }
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key == FREE_KEY) {
+            V previous = freeKeyValue;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return previous;
+        }
+        int pos = slot(key);
+        while (true) {
+            long current = keys[pos];
+            if (current == FREE_KEY) {
+                keys[pos] = key;
+                values[pos] = value;
+                if (++size >= resizeThreshold) {
+                    rehash(keys.length << 1);
+                }
+                return null;
+            }
+            if (current == key) {
+                V previous = (V) values[pos];
+                values[pos] = value;
+                return previous;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (key == FREE_KEY) {
+            V previous = freeKeyValue;
+            hasFreeKey = false;
+            freeKeyValue = null;
+            return previous;
+        }
+        int pos = indexOf(key);
+        if (pos < 0) {
+            return null;
+        }
+        V previous = (V) values[pos];
+        shiftKeys(pos);
+        size--;
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(EntryConsumer<V> consumer) {
+        if (hasFreeKey) {
+            consumer.accept(FREE_KEY, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns up to limit smallest keys greater than after, in ascending order.
+     */
+    long[] firstKeysAfter(long after, int limit) {
+        BoundedLongHeap heap = new BoundedLongHeap(Math.min(limit, size()));
+        if (hasFreeKey && FREE_KEY > after) {
+            heap.offer(FREE_KEY);
+        }
+        for (long key : keys) {
+            if (key != FREE_KEY && key > after) {
+                heap.offer(key);
+            }
+        }
+        return heap.toSortedArray();
+    }
+
+    /**
+     * Grows the table at once for expectedSize entries, instead of doubling it repeatedly while they are put.
+     */
+    void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 2) / LOAD_FACTOR));
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        Arrays.fill(values, null);
+        size = 0;
+        hasFreeKey = false;
+        freeKeyValue = null;
+    }
+
+    private int indexOf(long key) {
+        int pos = slot(key);
+        while (true) {
+            long current = keys[pos];
+            if (current == FREE_KEY) {
+                return -1;
+            }
+            if (current == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    /**
+     * Moves the following entries of the probe chain back into the freed slot,
+     * so lookups never stop early at a hole.
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        long current;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                current = keys[pos];
+                if (current == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    values[last] = null;
+                    return;
+                }
+                int home = slot(current);
+                if (last <= pos ? last >= home || home > pos : last >= home && home > pos) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = current;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != FREE_KEY) {
+                int pos = slot(key);
+                while (keys[pos] != FREE_KEY) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = key;
+                values[pos] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        return LongHash.mix(key) & mask;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+}
@@ -0,0 +1,76 @@
+package com.edu.ulab.app.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads a file sequentially through memory-mapped windows, the next window is mapped where the read bytes end,
+ * so a value asked for with require() is never split between two windows.
+ * Keeps the CRC32C of the bytes read so far.
+ */
+final class MappedFileReader implements AutoCloseable {
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final CRC32C checksum = new CRC32C();
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int checksummed;
+
+    MappedFileReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, size));
+    }
+
+    long position() {
+        return windowStart + window.position();
+    }
+
+    long remaining() {
+        return size - position();
+    }
+
+    /**
+     * Returns the window, positioned at the next unread byte, with at least bytes remaining,
+     * or null if the file ends before.
+     */
+    ByteBuffer require(int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return window;
+        }
+        if (remaining() < bytes) {
+            return null;
+        }
+        updateChecksum();
+        windowStart += window.position();
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                Math.min(Math.max(WINDOW_SIZE, bytes), size - windowStart));
+        checksummed = 0;
+        return window;
+    }
+
+    /**
+     * CRC32C of the bytes read so far.
+     */
+    int checksum() {
+        updateChecksum();
+        return (int) checksum.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void updateChecksum() {
+        checksum.update(window.duplicate().limit(window.position()).position(checksummed));
+        checksummed = window.position();
+    }
+}
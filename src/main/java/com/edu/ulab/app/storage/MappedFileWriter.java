@@ -0,0 +1,61 @@
+package com.edu.ulab.app.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes a new file through memory-mapped windows, the next window is mapped where the written bytes end.
+ * finish() appends the CRC32C of the content, cuts the file to its length and forces it to disk.
+ */
+final class MappedFileWriter implements AutoCloseable {
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final CRC32C checksum = new CRC32C();
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int checksummed;
+
+    MappedFileWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.window = channel.map(FileChannel.MapMode.READ_WRITE, 0, WINDOW_SIZE);
+    }
+
+    /**
+     * Returns the window, positioned at the end of the file, with at least bytes remaining.
+     */
+    ByteBuffer reserve(int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            updateChecksum();
+            window.force();
+            windowStart += window.position();
+            window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(WINDOW_SIZE, bytes));
+            checksummed = 0;
+        }
+        return window;
+    }
+
+    void finish() throws IOException {
+        updateChecksum();
+        reserve(Integer.BYTES).putInt((int) checksum.getValue());
+        window.force();
+        channel.truncate(windowStart + window.position());
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void updateChecksum() {
+        checksum.update(window.duplicate().limit(window.position()).position(checksummed));
+        checksummed = window.position();
+    }
+}
@@ -0,0 +1,22 @@
+package com.edu.ulab.app.storage;
+
+import com.edu.ulab.app.entity.Person;
+
+/**
+ * Immutable stored form of a user, so callers can't change the storage through returned entities.
+ */
+record PersonRecord(long id, String fullName, String title, int age) {
+
+    static PersonRecord of(long id, Person person) {
+        return new PersonRecord(id, person.getFullName(), person.getTitle(), person.getAge());
+    }
+
+    Person toPerson() {
+        Person person = new Person();
+        person.setId(id);
+        person.setFullName(fullName);
+        person.setTitle(title);
+        person.setAge(age);
+        return person;
+    }
+}
@@ -1,11 +1,478 @@
 package com.edu.ulab.app.storage;
 
-public class Storage {
-    //todo создать хранилище в котором будут содержаться данные
-    // сделать абстракции через которые можно будет производить операции с хранилищем
-    // продумать логику поиска и сохранения
-    // продумать возможные ошибки
-    // учесть, что при сохранеии юзера или книги, должен генерироваться идентификатор
-    // продумать что у узера может быть много книг и нужно создать эту связь
-    // так же учесть, что методы хранилища принимают друго тип данных - учесть это в абстракции
+import com.edu.ulab.app.entity.Book;
+import com.edu.ulab.app.entity.Person;
+import com.edu.ulab.app.exception.NotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory storage of users and books.
+ * Records are kept in primitive long-keyed open-addressing maps, ids come from lock-free sequences.
+ * The user -> book ids index makes the lookup of user's books cost O(books of the user).
+ * Reads run in parallel, writes are serialized by a read-write lock,
+ * because a book write touches both the book map and the index.
+ * <p>
+ * Every change is handed to the attached {@link StorageJournal} under the write lock, before it is applied,
+ * and synced after the lock is released. StoragePersistence attaches its log and recovers the records at startup.
+ */
+@Slf4j
+@Component
+public class Storage implements UserStorage, BookStorage {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_BOOKS_PER_USER = 4;
+
+    private final LongKeyedMap<PersonRecord> persons = new LongKeyedMap<>(INITIAL_CAPACITY);
+    private final LongKeyedMap<BookRecord> books = new LongKeyedMap<>(INITIAL_CAPACITY);
+    private final LongKeyedMap<LongHashSet> bookIdsByUser = new LongKeyedMap<>(INITIAL_CAPACITY);
+
+    private final IdGenerator personIds = new IdGenerator();
+    private final IdGenerator bookIds = new IdGenerator();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    // replaced under the write lock
+    private volatile StorageJournal journal = StorageJournal.NONE;
+
+    @Override
+    public Person savePerson(Person person) {
+        PersonRecord record = PersonRecord.of(personIds.nextId(), person);
+        StorageJournal journal;
+        long position;
+        writeLock.lock();
+        try {
+            journal = this.journal;
+            position = journal.logPerson(record);
+            persons.put(record.id(), record);
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        log.info("Person stored: {}", record.id());
+        return record.toPerson();
+    }
+
+    @Override
+    public List<Person> savePersons(List<Person> newPersons) {
+        List<PersonRecord> records = new ArrayList<>(newPersons.size());
+        for (Person person : newPersons) {
+            records.add(PersonRecord.of(personIds.nextId(), person));
+        }
+        StorageJournal journal;
+        long position = 0;
+        writeLock.lock();
+        try {
+            journal = this.journal;
+            for (PersonRecord record : records) {
+                position = journal.logPerson(record);
+            }
+            for (PersonRecord record : records) {
+                persons.put(record.id(), record);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        log.info("Persons stored: {}", records.size());
+        return records.stream().map(PersonRecord::toPerson).toList();
+    }
+
+    @Override
+    public Optional<Person> findPersonById(long id) {
+        PersonRecord record;
+        readLock.lock();
+        try {
+            record = persons.get(id);
+        } finally {
+            readLock.unlock();
+        }
+        return Optional.ofNullable(record).map(PersonRecord::toPerson);
+    }
+
+    @Override
+    public long[] findPersonIds(long afterId, int limit) {
+        readLock.lock();
+        try {
+            return persons.firstKeysAfter(afterId, limit);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Person> updatePerson(long id, Person person) {
+        PersonRecord record = PersonRecord.of(id, person);
+        StorageJournal journal;
+        long position;
+        writeLock.lock();
+        try {
+            if (!persons.containsKey(id)) {
+                return Optional.empty();
+            }
+            journal = this.journal;
+            position = journal.logPerson(record);
+            persons.put(id, record);
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        return Optional.of(record.toPerson());
+    }
+
+    @Override
+    public boolean deletePersonById(long id) {
+        StorageJournal journal;
+        long position;
+        writeLock.lock();
+        try {
+            if (!persons.containsKey(id)) {
+                return false;
+            }
+            journal = this.journal;
+            position = journal.logPersonDeleted(id);
+            persons.remove(id);
+            removeBooksOfUser(id);
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        log.info("Person removed with his books: {}", id);
+        return true;
+    }
+
+    @Override
+    public Book saveBook(Book book) {
+        long userId = book.getUserId() == null ? BookRecord.NO_USER : book.getUserId();
+        BookRecord record = BookRecord.of(bookIds.nextId(), userId, book);
+        StorageJournal journal;
+        long position;
+        writeLock.lock();
+        try {
+            if (record.hasUser() && !persons.containsKey(userId)) {
+                throw new NotFoundException(String.format("User with id %d not found", userId));
+            }
+            journal = this.journal;
+            position = journal.logBook(record);
+            if (record.hasUser()) {
+                indexBook(userId, record.id());
+            }
+            books.put(record.id(), record);
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        log.info("Book stored: {}", record.id());
+        return record.toBook();
+    }
+
+    @Override
+    public List<Book> saveBooks(List<Book> newBooks) {
+        List<BookRecord> records = new ArrayList<>(newBooks.size());
+        for (Book book : newBooks) {
+            long userId = book.getUserId() == null ? BookRecord.NO_USER : book.getUserId();
+            records.add(BookRecord.of(bookIds.nextId(), userId, book));
+        }
+        return storeBooks(records);
+    }
+
+    @Override
+    public long reserveBookIds(int count) {
+        return bookIds.reserve(count);
+    }
+
+    @Override
+    public List<Book> saveBooksWithIds(List<Book> newBooks) {
+        List<BookRecord> records = new ArrayList<>(newBooks.size());
+        for (Book book : newBooks) {
+            long userId = book.getUserId() == null ? BookRecord.NO_USER : book.getUserId();
+            records.add(BookRecord.of(book.getId(), userId, book));
+        }
+        return storeBooks(records);
+    }
+
+    private List<Book> storeBooks(List<BookRecord> records) {
+        StorageJournal journal;
+        long position = 0;
+        writeLock.lock();
+        try {
+            for (BookRecord record : records) {
+                if (record.hasUser() && !persons.containsKey(record.userId())) {
+                    throw new NotFoundException(String.format("User with id %d not found", record.userId()));
+                }
+            }
+            journal = this.journal;
+            for (BookRecord record : records) {
+                position = journal.logBook(record);
+            }
+            for (BookRecord record : records) {
+                if (record.hasUser()) {
+                    indexBook(record.userId(), record.id());
+                }
+                books.put(record.id(), record);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        log.info("Books stored: {}", records.size());
+        return records.stream().map(BookRecord::toBook).toList();
+    }
+
+    @Override
+    public Optional<Book> findBookById(long id) {
+        BookRecord record;
+        readLock.lock();
+        try {
+            record = books.get(id);
+        } finally {
+            readLock.unlock();
+        }
+        return Optional.ofNullable(record).map(BookRecord::toBook);
+    }
+
+    @Override
+    public Optional<Book> updateBook(long id, Book book) {
+        BookRecord updated;
+        StorageJournal journal;
+        long position;
+        writeLock.lock();
+        try {
+            BookRecord current = books.get(id);
+            if (current == null) {
+                return Optional.empty();
+            }
+            updated = BookRecord.of(id, current.userId(), book);
+            journal = this.journal;
+            position = journal.logBook(updated);
+            books.put(id, updated);
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        return Optional.of(updated.toBook());
+    }
+
+    @Override
+    public List<Book> findBooksByUserId(long userId) {
+        List<Book> result;
+        readLock.lock();
+        try {
+            LongHashSet ids = bookIdsByUser.get(userId);
+            if (ids == null) {
+                return List.of();
+            }
+            long[] sortedIds = ids.toSortedArray();
+            result = new ArrayList<>(sortedIds.length);
+            for (long bookId : sortedIds) {
+                result.add(books.get(bookId).toBook());
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public List<Book> findBooksByUserId(long userId, long afterId, int limit) {
+        List<Book> result;
+        readLock.lock();
+        try {
+            LongHashSet ids = bookIdsByUser.get(userId);
+            if (ids == null) {
+                return List.of();
+            }
+            long[] pageIds = ids.firstAfter(afterId, limit);
+            result = new ArrayList<>(pageIds.length);
+            for (long bookId : pageIds) {
+                result.add(books.get(bookId).toBook());
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean deleteBookById(long id) {
+        StorageJournal journal;
+        long position;
+        writeLock.lock();
+        try {
+            if (!books.containsKey(id)) {
+                return false;
+            }
+            journal = this.journal;
+            position = journal.logBookDeleted(id);
+            removeBook(id);
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        log.info("Book removed: {}", id);
+        return true;
+    }
+
+    @Override
+    public int deleteBooksByUserId(long userId) {
+        int removed;
+        StorageJournal journal;
+        long position = 0;
+        writeLock.lock();
+        try {
+            journal = this.journal;
+            if (bookIdsByUser.containsKey(userId)) {
+                position = journal.logBooksOfUserDeleted(userId);
+            }
+            removed = removeBooksOfUser(userId);
+        } finally {
+            writeLock.unlock();
+        }
+        journal.sync(position);
+        log.info("Books removed by user id {}: {}", userId, removed);
+        return removed;
+    }
+
+    void attach(StorageJournal journal) {
+        writeLock.lock();
+        try {
+            this.journal = journal;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs the recovery under the write lock, the apply* methods and restoreIds are only called from it.
+     * They change the records without passing them to the journal.
+     */
+    void recover(Runnable recovery) {
+        writeLock.lock();
+        try {
+            recovery.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void presize(int personCount, int bookCount) {
+        persons.ensureCapacity(personCount);
+        books.ensureCapacity(bookCount);
+        bookIdsByUser.ensureCapacity(personCount);
+    }
+
+    /**
+     * Sizes the index of a user about to get bookCount books, before they are applied.
+     */
+    void presizeBooksOfUser(long userId, int bookCount) {
+        if (userId != BookRecord.NO_USER && !bookIdsByUser.containsKey(userId)) {
+            bookIdsByUser.put(userId, new LongHashSet(bookCount));
+        }
+    }
+
+    void applyPerson(PersonRecord record) {
+        persons.put(record.id(), record);
+        personIds.advanceTo(record.id());
+    }
+
+    void applyPersonDeleted(long id) {
+        persons.remove(id);
+        removeBooksOfUser(id);
+    }
+
+    void applyBook(BookRecord record) {
+        if (books.put(record.id(), record) == null && record.hasUser()) {
+            indexBook(record.userId(), record.id());
+        }
+        bookIds.advanceTo(record.id());
+    }
+
+    void applyBookDeleted(long id) {
+        removeBook(id);
+    }
+
+    void applyBooksOfUserDeleted(long userId) {
+        removeBooksOfUser(userId);
+    }
+
+    /**
+     * Ids may have been handed out for records never stored, the sequences continue after them.
+     */
+    void restoreIds(long lastPersonId, long lastBookId) {
+        personIds.advanceTo(lastPersonId);
+        bookIds.advanceTo(lastBookId);
+    }
+
+    /**
+     * Copies the records under the write lock and runs atCapture there, before any later change.
+     * The records are immutable, the copy shares them.
+     */
+    Image capture(Runnable atCapture) {
+        writeLock.lock();
+        try {
+            PersonRecord[] personCopy = new PersonRecord[persons.size()];
+            BookRecord[] bookCopy = new BookRecord[books.size()];
+            int[] counts = new int[2];
+            persons.forEach((id, record) -> personCopy[counts[0]++] = record);
+            books.forEach((id, record) -> bookCopy[counts[1]++] = record);
+            atCapture.run();
+            return new Image(personIds.lastId(), bookIds.lastId(), personCopy, bookCopy);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    record Image(long lastPersonId, long lastBookId, PersonRecord[] persons, BookRecord[] books) {
+    }
+
+    /**
+     * Must be called under the write lock.
+     */
+    private void removeBook(long id) {
+        BookRecord removed = books.remove(id);
+        if (removed != null && removed.hasUser()) {
+            unindexBook(removed.userId(), id);
+        }
+    }
+
+    /**
+     * Must be called under the write lock.
+     */
+    private int removeBooksOfUser(long userId) {
+        LongHashSet ids = bookIdsByUser.remove(userId);
+        if (ids == null) {
+            return 0;
+        }
+        for (long bookId : ids.toSortedArray()) {
+            books.remove(bookId);
+        }
+        return ids.size();
+    }
+
+    private void indexBook(long userId, long bookId) {
+        LongHashSet ids = bookIdsByUser.get(userId);
+        if (ids == null) {
+            ids = new LongHashSet(INITIAL_BOOKS_PER_USER);
+            bookIdsByUser.put(userId, ids);
+        }
+        ids.add(bookId);
+    }
+
+    private void unindexBook(long userId, long bookId) {
+        LongHashSet ids = bookIdsByUser.get(userId);
+        if (ids != null) {
+            ids.remove(bookId);
+            if (ids.isEmpty()) {
+                bookIdsByUser.remove(userId);
+            }
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package com.edu.ulab.app.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary form of the records in the log and the snapshots: big-endian numbers,
+ * strings as their UTF-8 byte count (-1 for null) followed by the bytes.
+ * Callers make sure the buffer has room, the sizes are computed from the encoded strings.
+ */
+final class StorageCodec {
+    static final int PERSON_FIXED_SIZE = Long.BYTES + Integer.BYTES;
+    static final int BOOK_FIXED_SIZE = 3 * Long.BYTES;
+
+    private StorageCodec() {
+    }
+
+    static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int size(byte[] utf8) {
+        return Integer.BYTES + (utf8 == null ? 0 : utf8.length);
+    }
+
+    static void putFixed(ByteBuffer buffer, PersonRecord record) {
+        buffer.putLong(record.id());
+        buffer.putInt(record.age());
+    }
+
+    static void putFixed(ByteBuffer buffer, BookRecord record) {
+        buffer.putLong(record.id());
+        buffer.putLong(record.userId());
+        buffer.putLong(record.pageCount());
+    }
+
+    static void putString(ByteBuffer buffer, byte[] utf8) {
+        if (utf8 == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(utf8.length);
+            buffer.put(utf8);
+        }
+    }
+
+    /**
+     * Reads a string from a buffer holding all of it.
+     */
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
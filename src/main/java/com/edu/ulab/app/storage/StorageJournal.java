@@ -0,0 +1,34 @@
+package com.edu.ulab.app.storage;
+
+/**
+ * Receives every change of {@link Storage}, under its write lock and in the order of the changes.
+ * The log* methods return the position of the change, sync() returns once that position is durable.
+ * Storage calls sync() after releasing the lock, so concurrent writers share one fsync.
+ */
+interface StorageJournal {
+    StorageJournal NONE = new StorageJournal() {
+    };
+
+    default long logPerson(PersonRecord record) {
+        return 0;
+    }
+
+    default long logPersonDeleted(long id) {
+        return 0;
+    }
+
+    default long logBook(BookRecord record) {
+        return 0;
+    }
+
+    default long logBookDeleted(long id) {
+        return 0;
+    }
+
+    default long logBooksOfUserDeleted(long userId) {
+        return 0;
+    }
+
+    default void sync(long position) {
+    }
+}
@@ -0,0 +1,307 @@
+package com.edu.ulab.app.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the changes of {@link Storage}, in segment files storage-{segment}.log.
+ * An entry is the payload size, the CRC32C of the payload and the payload: the operation and its record.
+ * <p>
+ * Entries are collected in a buffer, written to the file when it is full and on force().
+ * With syncOnWrite, sync() forces the log before the change is acknowledged,
+ * writers waiting at the same time are covered by one force (group commit).
+ * Without it the owner forces the log periodically, a crash loses the changes since the last force.
+ * <p>
+ * An I/O error fails every later change, the storage must not diverge from its log.
+ */
+@Slf4j
+final class StorageLog implements StorageJournal, AutoCloseable {
+    private static final byte PUT_PERSON = 1;
+    private static final byte DELETE_PERSON = 2;
+    private static final byte PUT_BOOK = 3;
+    private static final byte DELETE_BOOK = 4;
+    private static final byte DELETE_BOOKS_OF_USER = 5;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final boolean syncOnWrite;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32C crc = new CRC32C();
+    private final Object syncLock = new Object();
+
+    // guarded by this
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes;
+    private long appended;
+    private int entryStart;
+    private IOException failure;
+
+    private volatile long durable;
+
+    StorageLog(Path directory, long segment, boolean syncOnWrite) throws IOException {
+        this.directory = directory;
+        this.syncOnWrite = syncOnWrite;
+        this.segment = segment;
+        this.channel = open(directory, segment);
+    }
+
+    static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("storage-%020d.log", segment));
+    }
+
+    @Override
+    public synchronized long logPerson(PersonRecord record) {
+        byte[] fullName = StorageCodec.utf8(record.fullName());
+        byte[] title = StorageCodec.utf8(record.title());
+        ByteBuffer entry = begin(PUT_PERSON,
+                StorageCodec.PERSON_FIXED_SIZE + StorageCodec.size(fullName) + StorageCodec.size(title));
+        StorageCodec.putFixed(entry, record);
+        StorageCodec.putString(entry, fullName);
+        StorageCodec.putString(entry, title);
+        return end(entry);
+    }
+
+    @Override
+    public synchronized long logPersonDeleted(long id) {
+        return end(begin(DELETE_PERSON, Long.BYTES).putLong(id));
+    }
+
+    @Override
+    public synchronized long logBook(BookRecord record) {
+        byte[] title = StorageCodec.utf8(record.title());
+        byte[] author = StorageCodec.utf8(record.author());
+        ByteBuffer entry = begin(PUT_BOOK,
+                StorageCodec.BOOK_FIXED_SIZE + StorageCodec.size(title) + StorageCodec.size(author));
+        StorageCodec.putFixed(entry, record);
+        StorageCodec.putString(entry, title);
+        StorageCodec.putString(entry, author);
+        return end(entry);
+    }
+
+    @Override
+    public synchronized long logBookDeleted(long id) {
+        return end(begin(DELETE_BOOK, Long.BYTES).putLong(id));
+    }
+
+    @Override
+    public synchronized long logBooksOfUserDeleted(long userId) {
+        return end(begin(DELETE_BOOKS_OF_USER, Long.BYTES).putLong(userId));
+    }
+
+    @Override
+    public void sync(long position) {
+        if (syncOnWrite && durable < position) {
+            force();
+        }
+    }
+
+    /**
+     * Writes the buffered entries and forces them to disk, unless another force already covered them.
+     */
+    void force() {
+        synchronized (syncLock) {
+            FileChannel current;
+            long target;
+            synchronized (this) {
+                if (durable >= appended) {
+                    return;
+                }
+                writeBuffer();
+                current = channel;
+                target = appended;
+            }
+            try {
+                current.force(false);
+            } catch (IOException exc) {
+                throw fail(exc);
+            }
+            durable = target;
+        }
+    }
+
+    /**
+     * Closes the current segment durably and continues in the next one, returns its number.
+     * Called under the write lock of the storage, so the segments split the changes exactly.
+     */
+    long roll() {
+        synchronized (syncLock) {
+            synchronized (this) {
+                writeBuffer();
+                try {
+                    channel.force(false);
+                    channel.close();
+                    durable = appended;
+                    segment++;
+                    segmentBytes = 0;
+                    channel = open(directory, segment);
+                } catch (IOException exc) {
+                    throw fail(exc);
+                }
+                return segment;
+            }
+        }
+    }
+
+    synchronized long segment() {
+        return segment;
+    }
+
+    /**
+     * Bytes of the current segment, buffered ones included.
+     */
+    synchronized long segmentBytes() {
+        return segmentBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Applies the entries of a segment to the storage, returns the number of entries.
+     * An incomplete or corrupt entry in the last segment is the torn write of a crash, the segment is cut there;
+     * in an earlier segment it fails the recovery.
+     */
+    static long replay(Path path, Storage storage, boolean lastSegment) throws IOException {
+        long entries = 0;
+        long validSize = 0;
+        String damage = null;
+        try (MappedFileReader reader = new MappedFileReader(path)) {
+            CRC32C crc = new CRC32C();
+            while (reader.remaining() > 0) {
+                validSize = reader.position();
+                ByteBuffer header = reader.require(HEADER_SIZE);
+                if (header == null) {
+                    damage = "incomplete entry header";
+                    break;
+                }
+                int size = header.getInt();
+                int checksum = header.getInt();
+                ByteBuffer payload = size > 0 ? reader.require(size) : null;
+                if (payload == null) {
+                    damage = "incomplete entry of " + size + " bytes";
+                    break;
+                }
+                int payloadEnd = payload.position() + size;
+                crc.reset();
+                crc.update(payload.slice(payload.position(), size));
+                if ((int) crc.getValue() != checksum) {
+                    damage = "checksum mismatch";
+                    break;
+                }
+                apply(payload, storage);
+                payload.position(payloadEnd);
+                entries++;
+            }
+        }
+        if (damage != null) {
+            if (!lastSegment) {
+                throw new IllegalStateException(String.format("Log segment %s is damaged at %d: %s",
+                        path.getFileName(), validSize, damage));
+            }
+            log.warn("Log segment {} cut at {} after a torn write: {}", path.getFileName(), validSize, damage);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validSize);
+                channel.force(true);
+            }
+        }
+        return entries;
+    }
+
+    private static void apply(ByteBuffer payload, Storage storage) {
+        byte operation = payload.get();
+        switch (operation) {
+            case PUT_PERSON -> {
+                long id = payload.getLong();
+                int age = payload.getInt();
+                String fullName = StorageCodec.getString(payload);
+                String title = StorageCodec.getString(payload);
+                storage.applyPerson(new PersonRecord(id, fullName, title, age));
+            }
+            case DELETE_PERSON -> storage.applyPersonDeleted(payload.getLong());
+            case PUT_BOOK -> {
+                long id = payload.getLong();
+                long userId = payload.getLong();
+                long pageCount = payload.getLong();
+                String title = StorageCodec.getString(payload);
+                String author = StorageCodec.getString(payload);
+                storage.applyBook(new BookRecord(id, userId, title, author, pageCount));
+            }
+            case DELETE_BOOK -> storage.applyBookDeleted(payload.getLong());
+            case DELETE_BOOKS_OF_USER -> storage.applyBooksOfUserDeleted(payload.getLong());
+            default -> throw new IllegalStateException("Unknown log operation: " + operation);
+        }
+    }
+
+    private static FileChannel open(Path directory, long segment) throws IOException {
+        return FileChannel.open(segmentPath(directory, segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private ByteBuffer begin(byte operation, int bodySize) {
+        if (failure != null) {
+            throw new UncheckedIOException("Storage log failed earlier", failure);
+        }
+        int entrySize = HEADER_SIZE + 1 + bodySize;
+        if (buffer.remaining() < entrySize) {
+            writeBuffer();
+        }
+        ByteBuffer target = entrySize <= buffer.capacity() ? buffer : ByteBuffer.allocate(entrySize);
+        entryStart = target.position();
+        target.position(entryStart + HEADER_SIZE);
+        return target.put(operation);
+    }
+
+    private long end(ByteBuffer target) {
+        int payloadStart = entryStart + HEADER_SIZE;
+        int payloadSize = target.position() - payloadStart;
+        crc.reset();
+        crc.update(target.array(), payloadStart, payloadSize);
+        target.putInt(entryStart, payloadSize);
+        target.putInt(entryStart + Integer.BYTES, (int) crc.getValue());
+        appended += HEADER_SIZE + payloadSize;
+        segmentBytes += HEADER_SIZE + payloadSize;
+        if (target != buffer) {
+            write(target.flip());
+        }
+        return appended;
+    }
+
+    private void writeBuffer() {
+        if (buffer.position() > 0) {
+            write(buffer.flip());
+            buffer.clear();
+        }
+    }
+
+    private void write(ByteBuffer bytes) {
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException exc) {
+            throw fail(exc);
+        }
+    }
+
+    private UncheckedIOException fail(IOException exc) {
+        synchronized (this) {
+            failure = exc;
+        }
+        log.error("Storage log failed, changes of the storage are rejected from now on", exc);
+        return new UncheckedIOException(exc);
+    }
+}
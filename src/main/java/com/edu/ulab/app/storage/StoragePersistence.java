@@ -0,0 +1,210 @@
+package com.edu.ulab.app.storage;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps {@link Storage} on disk: every change goes to the StorageLog, periodically a StorageSnapshot
+ * replaces the log segments written before it.
+ * <p>
+ * start() recovers the storage from the latest snapshot and the log segments after it, then attaches a new segment.
+ * With syncInterval zero every change is forced to disk before it is acknowledged, concurrent changes share a force.
+ * Otherwise the log is forced every syncInterval, a crash loses at most the changes of that interval.
+ * <p>
+ * A snapshot copies the records under the write lock of the storage and starts the next segment there,
+ * it is written to disk after the lock is released. close() writes a last snapshot,
+ * so a clean restart reads no log.
+ */
+@Slf4j
+public class StoragePersistence implements AutoCloseable {
+    private static final Pattern SEGMENT = Pattern.compile("storage-(\\d{20})\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{20})\\.snap");
+
+    private final Storage storage;
+    private final Path directory;
+    private final Duration syncInterval;
+    private final Duration snapshotInterval;
+    private final MeterRegistry meterRegistry;
+    private final Timer snapshotTimer;
+    private final Timer syncTimer;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "storage-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile StorageLog storageLog;
+
+    public StoragePersistence(Storage storage,
+                              Path directory,
+                              Duration syncInterval,
+                              Duration snapshotInterval,
+                              MeterRegistry meterRegistry) {
+        if (syncInterval.isNegative() || snapshotInterval.isNegative()) {
+            throw new IllegalArgumentException("syncInterval and snapshotInterval must not be negative");
+        }
+        this.storage = storage;
+        this.directory = directory;
+        this.syncInterval = syncInterval;
+        this.snapshotInterval = snapshotInterval;
+        this.meterRegistry = meterRegistry;
+        this.snapshotTimer = Timer.builder("storage.snapshot")
+                .description("Time to copy the storage and write it as a snapshot")
+                .register(meterRegistry);
+        this.syncTimer = Timer.builder("storage.log.sync")
+                .description("Time of a periodic force of the storage log")
+                .register(meterRegistry);
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        long started = System.nanoTime();
+        long snapshot = latest(SNAPSHOT);
+        List<Long> segments = numbers(SEGMENT).stream().filter(segment -> segment >= snapshot).toList();
+
+        long[] counts = new long[2];
+        storage.recover(() -> {
+            try {
+                if (snapshot > 0) {
+                    counts[0] = StorageSnapshot.read(StorageSnapshot.snapshotPath(directory, snapshot), storage);
+                }
+                for (int i = 0; i < segments.size(); i++) {
+                    counts[1] += StorageLog.replay(StorageLog.segmentPath(directory, segments.get(i)), storage,
+                            i == segments.size() - 1);
+                }
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+        });
+        deleteBefore(snapshot);
+
+        long lastSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        long segment = Math.max(Math.max(snapshot, 1), lastSegment + 1);
+        storageLog = new StorageLog(directory, segment, syncInterval.isZero());
+        storage.attach(storageLog);
+        log.info("Storage recovered from {} in {} ms: {} records of snapshot {}, {} log entries of {} segments",
+                directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+                counts[0], snapshot, counts[1], segments.size());
+
+        Gauge.builder("storage.log.size", this, StoragePersistence::logSize)
+                .description("Bytes of the current log segment")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        if (!syncInterval.isZero()) {
+            long millis = syncInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::force, millis, millis, TimeUnit.MILLISECONDS);
+        }
+        if (!snapshotInterval.isZero()) {
+            long millis = snapshotInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::scheduledSnapshot, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a snapshot unless nothing changed since the last one, then deletes the files it replaces.
+     */
+    public synchronized void snapshot() throws IOException {
+        StorageLog current = storageLog;
+        if (current == null || current.segmentBytes() == 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        long[] segment = new long[1];
+        Storage.Image image = storage.capture(() -> segment[0] = current.roll());
+        StorageSnapshot.write(StorageSnapshot.snapshotPath(directory, segment[0]), image);
+        deleteBefore(segment[0]);
+        long nanos = System.nanoTime() - started;
+        snapshotTimer.record(nanos, TimeUnit.NANOSECONDS);
+        log.info("Storage snapshot {} written in {} ms: {} persons, {} books", segment[0],
+                TimeUnit.NANOSECONDS.toMillis(nanos), image.persons().length, image.books().length);
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        synchronized (this) {
+            StorageLog current = storageLog;
+            if (current == null) {
+                return;
+            }
+            snapshot();
+            storage.attach(StorageJournal.NONE);
+            storageLog = null;
+            current.close();
+            if (current.segmentBytes() == 0) {
+                Files.delete(StorageLog.segmentPath(directory, current.segment()));
+            }
+        }
+    }
+
+    private double logSize() {
+        StorageLog current = storageLog;
+        return current == null ? 0 : current.segmentBytes();
+    }
+
+    private void force() {
+        try {
+            syncTimer.record(storageLog::force);
+        } catch (RuntimeException exc) {
+            log.error("Storage log force failed", exc);
+        }
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException exc) {
+            log.error("Storage snapshot failed, the log keeps growing", exc);
+        }
+    }
+
+    /**
+     * Deletes the snapshots and log segments covered by the snapshot of the given segment,
+     * and leftover temporary files.
+     */
+    private void deleteBefore(long snapshot) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                Matcher segment = SEGMENT.matcher(name);
+                Matcher snapshotFile = SNAPSHOT.matcher(name);
+                if (name.endsWith(".tmp")
+                        || segment.matches() && Long.parseLong(segment.group(1)) < snapshot
+                        || snapshotFile.matches() && Long.parseLong(snapshotFile.group(1)) < snapshot) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private long latest(Pattern pattern) throws IOException {
+        List<Long> found = numbers(pattern);
+        return found.isEmpty() ? 0 : found.get(found.size() - 1);
+    }
+
+    private List<Long> numbers(Pattern pattern) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> pattern.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
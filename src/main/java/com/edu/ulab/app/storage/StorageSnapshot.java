@@ -0,0 +1,174 @@
+package com.edu.ulab.app.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Compact image of {@link Storage} in the file snapshot-{segment}.snap, holding every change
+ * of the log segments before that segment. Written and read through memory-mapped files:
+ * a header with the id sequences and the record counts, the persons, the books and the CRC32C of all of it.
+ * <p>
+ * The books are written in groups by user: the user id and the book count, then the books without their user id.
+ * The recovery sizes the index of a user once and fills it in one go,
+ * instead of jumping between the index entries of all users.
+ * A snapshot is written to a temporary file and renamed when complete, a crash never leaves a partial one.
+ */
+final class StorageSnapshot {
+    private static final int MAGIC = 0x55534e50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int GROUP_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int GROUPED_BOOK_FIXED_SIZE = 2 * Long.BYTES;
+
+    private StorageSnapshot() {
+    }
+
+    static Path snapshotPath(Path directory, long segment) {
+        return directory.resolve(String.format("snapshot-%020d.snap", segment));
+    }
+
+    static void write(Path path, Storage.Image image) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        try (MappedFileWriter writer = new MappedFileWriter(temporary)) {
+            writer.reserve(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(image.lastPersonId())
+                    .putLong(image.lastBookId())
+                    .putInt(image.persons().length)
+                    .putInt(image.books().length);
+            for (PersonRecord record : image.persons()) {
+                byte[] fullName = StorageCodec.utf8(record.fullName());
+                byte[] title = StorageCodec.utf8(record.title());
+                ByteBuffer buffer = writer.reserve(
+                        StorageCodec.PERSON_FIXED_SIZE + StorageCodec.size(fullName) + StorageCodec.size(title));
+                StorageCodec.putFixed(buffer, record);
+                StorageCodec.putString(buffer, fullName);
+                StorageCodec.putString(buffer, title);
+            }
+            BookRecord[] books = groupedByUser(image.books());
+            int groupStart = 0;
+            while (groupStart < books.length) {
+                long userId = books[groupStart].userId();
+                int groupEnd = groupStart + 1;
+                while (groupEnd < books.length && books[groupEnd].userId() == userId) {
+                    groupEnd++;
+                }
+                writer.reserve(GROUP_HEADER_SIZE).putLong(userId).putInt(groupEnd - groupStart);
+                for (int i = groupStart; i < groupEnd; i++) {
+                    BookRecord record = books[i];
+                    byte[] title = StorageCodec.utf8(record.title());
+                    byte[] author = StorageCodec.utf8(record.author());
+                    ByteBuffer buffer = writer.reserve(
+                            GROUPED_BOOK_FIXED_SIZE + StorageCodec.size(title) + StorageCodec.size(author));
+                    buffer.putLong(record.id()).putLong(record.pageCount());
+                    StorageCodec.putString(buffer, title);
+                    StorageCodec.putString(buffer, author);
+                }
+                groupStart = groupEnd;
+            }
+            writer.finish();
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads the records into the storage, which must be empty, returns the number of records.
+     * Fails with IllegalStateException if the file is not a complete snapshot.
+     */
+    static long read(Path path, Storage storage) throws IOException {
+        try (MappedFileReader reader = new MappedFileReader(path)) {
+            ByteBuffer header = require(reader, HEADER_SIZE, path);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("Not a storage snapshot of version " + VERSION + ": " + path);
+            }
+            long lastPersonId = header.getLong();
+            long lastBookId = header.getLong();
+            int personCount = header.getInt();
+            int bookCount = header.getInt();
+            storage.presize(personCount, bookCount);
+
+            for (int i = 0; i < personCount; i++) {
+                ByteBuffer buffer = require(reader, StorageCodec.PERSON_FIXED_SIZE, path);
+                long id = buffer.getLong();
+                int age = buffer.getInt();
+                String fullName = getString(reader, path);
+                String title = getString(reader, path);
+                storage.applyPerson(new PersonRecord(id, fullName, title, age));
+            }
+            int booksRead = 0;
+            while (booksRead < bookCount) {
+                ByteBuffer group = require(reader, GROUP_HEADER_SIZE, path);
+                long userId = group.getLong();
+                int groupSize = group.getInt();
+                if (groupSize <= 0 || groupSize > bookCount - booksRead) {
+                    throw new IllegalStateException("Storage snapshot has a damaged book group: " + path);
+                }
+                storage.presizeBooksOfUser(userId, groupSize);
+                for (int i = 0; i < groupSize; i++) {
+                    ByteBuffer buffer = require(reader, GROUPED_BOOK_FIXED_SIZE, path);
+                    long id = buffer.getLong();
+                    long pageCount = buffer.getLong();
+                    String title = getString(reader, path);
+                    String author = getString(reader, path);
+                    storage.applyBook(new BookRecord(id, userId, title, author, pageCount));
+                }
+                booksRead += groupSize;
+            }
+            storage.restoreIds(lastPersonId, lastBookId);
+
+            int checksum = reader.checksum();
+            if (require(reader, Integer.BYTES, path).getInt() != checksum || reader.remaining() != 0) {
+                throw new IllegalStateException("Storage snapshot checksum mismatch: " + path);
+            }
+            return (long) personCount + bookCount;
+        }
+    }
+
+    /**
+     * Counting sort by user: the books of a user keep their relative order.
+     */
+    private static BookRecord[] groupedByUser(BookRecord[] books) {
+        LongKeyedMap<int[]> offsets = new LongKeyedMap<>(1024);
+        for (BookRecord book : books) {
+            int[] count = offsets.get(book.userId());
+            if (count == null) {
+                offsets.put(book.userId(), new int[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+        int[] start = new int[1];
+        offsets.forEach((userId, offset) -> {
+            int count = offset[0];
+            offset[0] = start[0];
+            start[0] += count;
+        });
+        BookRecord[] grouped = new BookRecord[books.length];
+        for (BookRecord book : books) {
+            grouped[offsets.get(book.userId())[0]++] = book;
+        }
+        return grouped;
+    }
+
+    /**
+     * A string is read in two steps, its length first, so the window holds all of its bytes.
+     */
+    private static String getString(MappedFileReader reader, Path path) throws IOException {
+        ByteBuffer buffer = require(reader, Integer.BYTES, path);
+        int length = buffer.getInt(buffer.position());
+        return StorageCodec.getString(require(reader, Integer.BYTES + Math.max(length, 0), path));
+    }
+
+    private static ByteBuffer require(MappedFileReader reader, int bytes, Path path) throws IOException {
+        ByteBuffer buffer = reader.require(bytes);
+        if (buffer == null) {
+            throw new IllegalStateException("Storage snapshot is truncated: " + path);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,38 @@
+package com.edu.ulab.app.storage;
+
+import com.edu.ulab.app.entity.Person;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Operations with users in the in-memory storage.
+ */
+public interface UserStorage {
+    /**
+     * Generates an id for the user and stores it.
+     */
+    Person savePerson(Person person);
+
+    /**
+     * Generates ids for the users and stores them under one lock.
+     */
+    List<Person> savePersons(List<Person> newPersons);
+
+    Optional<Person> findPersonById(long id);
+
+    /**
+     * Keyset page: up to limit user ids greater than afterId, in ascending order.
+     */
+    long[] findPersonIds(long afterId, int limit);
+
+    /**
+     * Replaces the user's details, returns empty if there is no such user.
+     */
+    Optional<Person> updatePerson(long id, Person person);
+
+    /**
+     * Removes the user together with his books.
+     */
+    boolean deletePersonById(long id);
+}
@@ -0,0 +1,60 @@
+package com.edu.ulab.app.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out the ids of blocks reserved from a sequence whose increment is blockSize:
+ * one value of the sequence stands for the block of blockSize ids starting with it,
+ * as for the pooled-lo optimizer of the ORM backend. One id in blockSize reads the sequence.
+ * <p>
+ * The ids left in a block when the instance stops are never used.
+ * Callers that reserve a block without blocking use pollId() and nextIdFrom() instead of nextId(),
+ * a block reserved while another caller started one is dropped.
+ */
+public class IdBlockAllocator {
+    private final int blockSize;
+
+    // guarded by this
+    private long nextId;
+    private long blockEnd;
+
+    public IdBlockAllocator(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the next id, reserving a block with reserveBlock when the current one is used up.
+     */
+    public synchronized long nextId(LongSupplier reserveBlock) {
+        if (nextId == blockEnd) {
+            startBlock(reserveBlock.getAsLong());
+        }
+        return nextId++;
+    }
+
+    /**
+     * Returns the next id of the current block, 0 when the block is used up.
+     */
+    public synchronized long pollId() {
+        return nextId == blockEnd ? 0 : nextId++;
+    }
+
+    /**
+     * Continues with the block starting with firstId unless another one was started meanwhile,
+     * returns the next id.
+     */
+    public synchronized long nextIdFrom(long firstId) {
+        if (nextId == blockEnd) {
+            startBlock(firstId);
+        }
+        return nextId++;
+    }
+
+    private void startBlock(long firstId) {
+        nextId = firstId;
+        blockEnd = firstId + blockSize;
+    }
+}
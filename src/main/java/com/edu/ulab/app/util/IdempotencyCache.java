@@ -0,0 +1,110 @@
+package com.edu.ulab.app.util;
+
+import com.edu.ulab.app.exception.RequestIdConflictException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Responses of the create endpoints by operation and rqid, so a retried request is answered
+ * with the response of the first one instead of inserting again.
+ * The entry is added before the work starts: a duplicate arriving while the first request is still running
+ * waits for its result. Failed requests are forgotten, their retry runs again.
+ * <p>
+ * Bounded by maximumSize and expiring ttl after the first request, a retry after that runs again.
+ * The request body is kept with the response, reusing the rqid for a different body is rejected.
+ */
+@Slf4j
+public class IdempotencyCache {
+    private final Cache<Key, Entry> entries;
+    private Counter executed;
+    private Counter replayed;
+
+    public IdempotencyCache(long maximumSize, Duration ttl) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Publishes idempotency.requests{result=executed|replayed} and the number of remembered requests.
+     */
+    public void bindTo(MeterRegistry registry) {
+        executed = Counter.builder("idempotency.requests")
+                .tag("result", "executed")
+                .description("Create requests executed")
+                .register(registry);
+        replayed = Counter.builder("idempotency.requests")
+                .tag("result", "replayed")
+                .description("Create requests answered with the response of an earlier request with the same rqid")
+                .register(registry);
+        Gauge.builder("idempotency.size", entries, Cache::estimatedSize)
+                .description("Requests remembered by rqid")
+                .register(registry);
+    }
+
+    /**
+     * Runs action once per operation and requestId, an empty requestId disables the lookup.
+     * Every caller gets its own copy of the shared future.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String operation, String requestId, Object request,
+                                            Supplier<CompletableFuture<T>> action) {
+        if (requestId == null || requestId.isEmpty()) {
+            return action.get();
+        }
+        Key key = new Key(operation, requestId);
+        Entry entry = new Entry(request, new CompletableFuture<>());
+        ConcurrentMap<Key, Entry> map = entries.asMap();
+        Entry existing = map.putIfAbsent(key, entry);
+        if (existing != null) {
+            if (!Objects.equals(existing.request(), request)) {
+                throw new RequestIdConflictException("Request id " + requestId + " was already used for another request");
+            }
+            increment(replayed);
+            log.info("Request {} {} is a retry, answering with the first response", operation, requestId);
+            return (CompletableFuture<T>) existing.response().copy();
+        }
+
+        increment(executed);
+        CompletableFuture<T> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException exc) {
+            map.remove(key, entry);
+            entry.response().completeExceptionally(exc);
+            throw exc;
+        }
+        result.whenComplete((response, exc) -> {
+            if (exc != null) {
+                map.remove(key, entry);
+                entry.response().completeExceptionally(exc);
+            } else {
+                entry.response().complete(response);
+            }
+        });
+        return (CompletableFuture<T>) entry.response().copy();
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private record Key(String operation, String requestId) {
+    }
+
+    private record Entry(Object request, CompletableFuture<Object> response) {
+    }
+}
@@ -3,35 +3,96 @@ package com.edu.ulab.app.util;
 import com.edu.ulab.app.exception.JDBCConnectionException;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
- * For use with JDBC
+ * For use with JDBC.
+ * Connections are borrowed from the pooled DataSource configured by the
+ * spring.datasource block, closing a connection returns it to the pool.
+ * Statements are taken from the StatementCache when one is set,
+ * closing such a statement returns it to the cache.
  */
 @Slf4j
 @UtilityClass
 public class JdbcHelper {
 
-    public void activateDriver() {
-        try {
-            Class.forName("org.h2.Driver");
-        } catch (ClassNotFoundException exc) {
-            log.info(exc.getMessage());
-        }
+    private DataSource dataSource;
+    private StatementCache statementCache;
+
+    public void setDataSource(DataSource pooledDataSource) {
+        dataSource = pooledDataSource;
+    }
+
+    public void setStatementCache(StatementCache cache) {
+        statementCache = cache;
     }
 
     public Connection activateConnection() {
+        if (dataSource == null) {
+            throw new JDBCConnectionException("Connection pool is not initialized");
+        }
         try {
-            return DriverManager.getConnection("jdbc:h2:mem:userbook", "test", "test");
-        } catch (SQLException exc) {
-            handleSqlException(exc);
+            return DataSourceUtils.getConnection(dataSource);
+        } catch (CannotGetJdbcConnectionException exc) {
+            if (exc.getCause() instanceof SQLException sqlException) {
+                handleSqlException(sqlException);
+            } else {
+                log.info(exc.getMessage());
+            }
         }
         throw new JDBCConnectionException("Can't establish database connection");
     }
 
+    public PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+        return prepareStatement(connection, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    public PreparedStatement prepareStatement(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        if (statementCache == null) {
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        return MeteredDataSource.meter(connection, sql,
+                statementCache.prepareStatement(connection, sql, autoGeneratedKeys), PreparedStatement.class);
+    }
+
+    /**
+     * Starts a local transaction, unless the connection already takes part in a Spring-managed one.
+     * Returns true if the caller owns the transaction and has to finish it.
+     */
+    public boolean beginTransaction(Connection connection) throws SQLException {
+        if (DataSourceUtils.isConnectionTransactional(connection, dataSource)) {
+            return false;
+        }
+        connection.setAutoCommit(false);
+        return true;
+    }
+
+    public void commitTransaction(Connection connection, boolean owned) throws SQLException {
+        if (owned) {
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    public void rollbackTransaction(Connection connection, boolean owned) {
+        if (owned && connection != null) {
+            try {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            } catch (SQLException exc) {
+                handleSqlException(exc);
+            }
+        }
+    }
+
     public void handleSqlException(SQLException exc){
         while(exc != null) {
             log.info("SQLException message: {}", exc.getMessage());
@@ -43,7 +104,9 @@ public class JdbcHelper {
 
     public void closeResource(AutoCloseable ac) {
         try {
-            if (ac != null) {
+            if (ac instanceof Connection connection) {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            } else if (ac != null) {
                 ac.close();
             }
         } catch (Exception exc) {
@@ -0,0 +1,274 @@
+package com.edu.ulab.app.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+/**
+ * Counts the statements executed and the rows read through the pooled DataSource,
+ * so JPA, JdbcTemplate, JdbcHelper and Flyway are all covered:
+ * jdbc.statements{kind} per execution, jdbc.query.rows per result set when it is closed.
+ * Executions of a traced request are recorded as sql spans by RequestTracer.
+ * <p>
+ * Statements executed on a thread inside an open StatementScope are added to that scope,
+ * MethodMetricsInterceptor uses it for the statements of one facade call.
+ * <p>
+ * The meters are registered on the first connection, the DataSource is wrapped
+ * before the MeterRegistry can be created.
+ */
+public class MeteredDataSource extends DelegatingDataSource {
+    private static final ThreadLocal<StatementScope> SCOPE = new ThreadLocal<>();
+
+    private final Supplier<MeterRegistry> registrySupplier;
+    private volatile Meters meters;
+
+    public MeteredDataSource(DataSource targetDataSource, Supplier<MeterRegistry> registrySupplier) {
+        super(targetDataSource);
+        this.registrySupplier = registrySupplier;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return meteredConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return meteredConnection(super.getConnection(username, password));
+    }
+
+    /**
+     * Statements of StatementCache are prepared on the unwrapped connection,
+     * JdbcHelper puts them back under the meters of the connection they were taken for.
+     */
+    public static <S extends Statement> S meter(Connection connection, String sql, S statement, Class<S> type) {
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler handler) {
+            return type.cast(handler.meters.statement(statement, sql, type));
+        }
+        return statement;
+    }
+
+    public static StatementScope openStatementScope() {
+        StatementScope scope = new StatementScope(SCOPE.get());
+        SCOPE.set(scope);
+        return scope;
+    }
+
+    private Connection meteredConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(MeteredDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection, meters()));
+    }
+
+    private Meters meters() {
+        Meters current = meters;
+        if (current == null) {
+            synchronized (this) {
+                current = meters;
+                if (current == null) {
+                    current = new Meters(registrySupplier.get());
+                    meters = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Nested scopes count into the innermost one only.
+     */
+    public static final class StatementScope implements AutoCloseable {
+        private final StatementScope outer;
+        private long statements;
+
+        private StatementScope(StatementScope outer) {
+            this.outer = outer;
+        }
+
+        public long statements() {
+            return statements;
+        }
+
+        @Override
+        public void close() {
+            if (outer == null) {
+                SCOPE.remove();
+            } else {
+                SCOPE.set(outer);
+            }
+        }
+    }
+
+    private static final class Meters {
+        private final Counter queries;
+        private final Counter updates;
+        private final Counter batches;
+        private final Counter executes;
+        private final DistributionSummary rows;
+
+        private Meters(MeterRegistry registry) {
+            this.queries = statementCounter(registry, "query");
+            this.updates = statementCounter(registry, "update");
+            this.batches = statementCounter(registry, "batch");
+            this.executes = statementCounter(registry, "execute");
+            this.rows = DistributionSummary.builder("jdbc.query.rows")
+                    .description("Rows read from one result set")
+                    .register(registry);
+        }
+
+        private static Counter statementCounter(MeterRegistry registry, String kind) {
+            return Counter.builder("jdbc.statements")
+                    .tag("kind", kind)
+                    .description("JDBC statement executions, a batch counts once")
+                    .register(registry);
+        }
+
+        private void executed(Counter counter) {
+            counter.increment();
+            StatementScope scope = SCOPE.get();
+            if (scope != null) {
+                scope.statements++;
+            }
+        }
+
+        private Object statement(Statement statement, String sql, Class<?> type) {
+            return Proxy.newProxyInstance(MeteredDataSource.class.getClassLoader(),
+                    new Class<?>[]{type}, new StatementHandler(statement, sql, this));
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException exc) {
+            throw exc.getCause();
+        }
+    }
+
+    private record ConnectionHandler(Connection connection, Meters meters) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Metered " + connection;
+                default:
+            }
+            Object result = invokeTarget(connection, method, args);
+            if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                // prepareStatement and prepareCall take the SQL first, createStatement gets it on execution
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                return meters.statement(statement, sql, method.getReturnType());
+            }
+            return result;
+        }
+    }
+
+    private record StatementHandler(Statement statement, String sql, Meters meters) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "executeQuery":
+                    meters.executed(meters.queries);
+                    try (RequestTracer.Span span = RequestTracer.span("sql", sqlOf(args))) {
+                        return resultSet((ResultSet) invokeTarget(statement, method, args));
+                    }
+                case "executeUpdate", "executeLargeUpdate":
+                    meters.executed(meters.updates);
+                    return traced(method, args);
+                case "executeBatch", "executeLargeBatch":
+                    meters.executed(meters.batches);
+                    return traced(method, args);
+                case "execute":
+                    meters.executed(meters.executes);
+                    return traced(method, args);
+                case "getResultSet":
+                    return resultSet((ResultSet) invokeTarget(statement, method, args));
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Metered " + statement;
+                default:
+            }
+            return invokeTarget(statement, method, args);
+        }
+
+        private Object traced(Method method, Object[] args) throws Throwable {
+            try (RequestTracer.Span span = RequestTracer.span("sql", sqlOf(args))) {
+                return invokeTarget(statement, method, args);
+            }
+        }
+
+        /**
+         * Statement.execute* take the SQL, PreparedStatement.execute* run the prepared one.
+         */
+        private String sqlOf(Object[] args) {
+            return args != null && args.length > 0 && args[0] instanceof String text ? text : sql;
+        }
+
+        private ResultSet resultSet(ResultSet resultSet) {
+            if (resultSet == null) {
+                return null;
+            }
+            return (ResultSet) Proxy.newProxyInstance(MeteredDataSource.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new ResultSetHandler(resultSet, meters.rows));
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final DistributionSummary rowsSummary;
+        private long rows;
+        private boolean recorded;
+
+        private ResultSetHandler(ResultSet resultSet, DistributionSummary rowsSummary) {
+            this.resultSet = resultSet;
+            this.rowsSummary = rowsSummary;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    boolean hasRow = resultSet.next();
+                    if (hasRow) {
+                        rows++;
+                    }
+                    return hasRow;
+                case "close":
+                    if (!recorded) {
+                        recorded = true;
+                        rowsSummary.record(rows);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Metered " + resultSet;
+                default:
+            }
+            return invokeTarget(resultSet, method, args);
+        }
+    }
+}
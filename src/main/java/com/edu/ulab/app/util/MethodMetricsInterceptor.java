@@ -0,0 +1,105 @@
+package com.edu.ulab.app.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every public method called through the proxy: timerName{class, method, exception},
+ * exception is "none" for calls that returned normally, so the error count of a method is the count
+ * of its timers with another exception.
+ * With summaryName set, the JDBC statements executed by the call are recorded as well,
+ * counted by MeteredDataSource on the calling thread.
+ * <p>
+ * Meters are looked up once per method and exception type, a call costs two nanoTime reads and the recording.
+ */
+public class MethodMetricsInterceptor implements MethodInterceptor {
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry registry;
+    private final String timerName;
+    private final String summaryName;
+    private final String className;
+    private final Map<Method, MethodMeters> meters = new ConcurrentHashMap<>();
+
+    public MethodMetricsInterceptor(MeterRegistry registry, String timerName, String summaryName, Class<?> type) {
+        this.registry = registry;
+        this.timerName = timerName;
+        this.summaryName = summaryName;
+        this.className = type.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (!Modifier.isPublic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        MethodMeters methodMeters = meters.computeIfAbsent(method, MethodMeters::new);
+
+        MeteredDataSource.StatementScope scope = summaryName == null ? null : MeteredDataSource.openStatementScope();
+        long started = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            methodMeters.success.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable exc) {
+            methodMeters.failure(exc.getClass()).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            throw exc;
+        } finally {
+            if (scope != null) {
+                scope.close();
+                methodMeters.statements.record(scope.statements());
+            }
+        }
+    }
+
+    private final class MethodMeters {
+        private final String methodName;
+        private final Timer success;
+        private final DistributionSummary statements;
+        private final Map<Class<?>, Timer> failures = new ConcurrentHashMap<>();
+
+        private MethodMeters(Method method) {
+            this.methodName = tagValue(method);
+            this.success = timer(NO_EXCEPTION);
+            this.statements = summaryName == null ? null : DistributionSummary.builder(summaryName)
+                    .tag("class", className)
+                    .tag("method", methodName)
+                    .description("JDBC statements executed by one call")
+                    .register(registry);
+        }
+
+        private Timer failure(Class<?> exceptionType) {
+            return failures.computeIfAbsent(exceptionType, type -> timer(type.getSimpleName()));
+        }
+
+        private Timer timer(String exception) {
+            return Timer.builder(timerName)
+                    .tag("class", className)
+                    .tag("method", methodName)
+                    .tag("exception", exception)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Overloaded methods get the parameter count appended: getBooksByUserId/1 and getBooksByUserId/3 are different queries.
+     * ServiceRouter names its operations the same way.
+     */
+    public static String tagValue(Method method) {
+        boolean overloaded = Arrays.stream(method.getDeclaringClass().getMethods())
+                .filter(other -> other.getName().equals(method.getName()))
+                .count() > 1;
+        return overloaded ? method.getName() + "/" + method.getParameterCount() : method.getName();
+    }
+}
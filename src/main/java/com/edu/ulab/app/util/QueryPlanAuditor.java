@@ -0,0 +1,124 @@
+package com.edu.ulab.app.util;
+
+import com.edu.ulab.app.service.BookService;
+import com.edu.ulab.app.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Runs EXPLAIN at startup for every SQL statement of the service implementations
+ * (static final String fields named *_SQL) against the migrated schema and looks for full table scans.
+ * app.sql-audit.mode: report logs the scans, fail stops the startup, off skips the audit.
+ */
+@Slf4j
+@Component
+public class QueryPlanAuditor implements ApplicationRunner {
+    private static final String SQL_FIELD_SUFFIX = "_SQL";
+    private static final String TABLE_SCAN = "tableScan";
+
+    private final ListableBeanFactory beanFactory;
+    private final DataSource dataSource;
+    private final String mode;
+
+    public QueryPlanAuditor(ListableBeanFactory beanFactory,
+                            DataSource dataSource,
+                            @Value("${app.sql-audit.mode:report}") String mode) {
+        this.beanFactory = beanFactory;
+        this.dataSource = dataSource;
+        this.mode = mode;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws SQLException {
+        if ("off".equals(mode)) {
+            return;
+        }
+        Map<String, String> statements = collectStatements();
+        List<String> tableScans = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (Map.Entry<String, String> statement : statements.entrySet()) {
+                String plan = explain(connection, statement.getValue());
+                if (plan.contains(TABLE_SCAN)) {
+                    tableScans.add(statement.getKey() + ": " + plan);
+                }
+            }
+        }
+        if (tableScans.isEmpty()) {
+            log.info("Query plans audited: {} statements, no table scans", statements.size());
+            return;
+        }
+        tableScans.forEach(scan -> log.warn("Table scan in {}", scan));
+        if ("fail".equals(mode)) {
+            throw new IllegalStateException(String.format(
+                    "%d of %d statements scan whole tables, see the log above", tableScans.size(), statements.size()));
+        }
+    }
+
+    /**
+     * Returns the statements by ClassName.FIELD_NAME, in the order of declaration.
+     */
+    Map<String, String> collectStatements() {
+        Map<String, String> statements = new LinkedHashMap<>();
+        Stream.concat(beanFactory.getBeansOfType(UserService.class).values().stream(),
+                        beanFactory.getBeansOfType(BookService.class).values().stream())
+                .map(AopUtils::getTargetClass)
+                .distinct()
+                .forEach(serviceClass -> {
+                    for (Field field : serviceClass.getDeclaredFields()) {
+                        if (isSqlConstant(field)) {
+                            statements.put(serviceClass.getSimpleName() + "." + field.getName(), readConstant(field));
+                        }
+                    }
+                });
+        return statements;
+    }
+
+    private static boolean isSqlConstant(Field field) {
+        int modifiers = field.getModifiers();
+        return Modifier.isStatic(modifiers)
+                && Modifier.isFinal(modifiers)
+                && field.getType() == String.class
+                && field.getName().endsWith(SQL_FIELD_SUFFIX);
+    }
+
+    private static String readConstant(Field field) {
+        try {
+            field.setAccessible(true);
+            return (String) field.get(null);
+        } catch (IllegalAccessException exc) {
+            throw new IllegalStateException("Can't read " + field, exc);
+        }
+    }
+
+    /**
+     * Parameters stay unbound, the plan does not depend on their values.
+     */
+    private static String explain(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql);
+             ResultSet plan = ps.executeQuery()) {
+            StringBuilder result = new StringBuilder();
+            while (plan.next()) {
+                result.append(plan.getString(1).replaceAll("\\s+", " "));
+            }
+            return result.toString();
+        }
+    }
+}
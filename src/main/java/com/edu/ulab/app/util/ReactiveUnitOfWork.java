@@ -0,0 +1,30 @@
+package com.edu.ulab.app.util;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * UnitOfWork of the reactive profile: binds one R2DBC connection and transaction to a whole facade operation.
+ * The transaction manager is not a bean, a second TransactionManager would make @Transactional
+ * of the blocking services ambiguous.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveUnitOfWork {
+    private final TransactionalOperator transactionalOperator;
+
+    public ReactiveUnitOfWork(ConnectionFactory connectionFactory) {
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+
+    /**
+     * The statements of work run one after another on the bound connection, so they must not be subscribed concurrently.
+     */
+    public <T> Mono<T> execute(Mono<T> work) {
+        return transactionalOperator.transactional(work);
+    }
+}
@@ -0,0 +1,38 @@
+package com.edu.ulab.app.util;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /actuator/requesttraces: the span trees of the slowest sampled requests per endpoint,
+ * /actuator/requesttraces/{rqid} the retained traces of one request id.
+ * DELETE empties the buffer.
+ */
+@Endpoint(id = "requesttraces")
+public class RequestTraceEndpoint {
+    private final RequestTracer requestTracer;
+
+    public RequestTraceEndpoint(RequestTracer requestTracer) {
+        this.requestTracer = requestTracer;
+    }
+
+    @ReadOperation
+    public Map<String, List<RequestTracer.TraceView>> slowest() {
+        return requestTracer.slowest();
+    }
+
+    @ReadOperation
+    public List<RequestTracer.TraceView> byRequestId(@Selector String requestId) {
+        return requestTracer.byRequestId(requestId);
+    }
+
+    @DeleteOperation
+    public void clear() {
+        requestTracer.clear();
+    }
+}
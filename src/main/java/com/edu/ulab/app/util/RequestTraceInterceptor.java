@@ -0,0 +1,37 @@
+package com.edu.ulab.app.util;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records every public method called through the proxy as a span of the given kind,
+ * named Class.method, in the trace of the current request.
+ */
+public class RequestTraceInterceptor implements MethodInterceptor {
+    private final String kind;
+    private final String className;
+    private final Map<Method, String> spanNames = new ConcurrentHashMap<>();
+
+    public RequestTraceInterceptor(String kind, Class<?> type) {
+        this.kind = kind;
+        this.className = type.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (!RequestTracer.isTracing()
+                || !Modifier.isPublic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+        String spanName = spanNames.computeIfAbsent(method, m -> className + "." + m.getName());
+        try (RequestTracer.Span span = RequestTracer.span(kind, spanName)) {
+            return invocation.proceed();
+        }
+    }
+}
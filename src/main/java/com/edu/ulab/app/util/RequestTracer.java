@@ -0,0 +1,276 @@
+package com.edu.ulab.app.util;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process span recorder for a sample of the requests.
+ * HttpRequestFilter starts a trace per sampled request, the facade and service proxies
+ * and MeteredDataSource add spans under the span open on the current thread,
+ * the database executor carries it over with propagate().
+ * <p>
+ * Finished traces are kept per endpoint, only the slowest slowestPerEndpoint of each.
+ * A trace records at most maxSpansPerTrace spans, the others are only counted.
+ * <p>
+ * Without a sampled request on the thread, span() is one ThreadLocal read returning a no-op span.
+ */
+public class RequestTracer {
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final Span NOOP = new Span(null, null, null, null);
+    private static final int MAX_ENDPOINTS = 1000;
+
+    private final double sampleRate;
+    private final int slowestPerEndpoint;
+    private final int maxSpansPerTrace;
+    private final Map<String, SlowestTraces> endpoints = new ConcurrentHashMap<>();
+
+    public RequestTracer(double sampleRate, int slowestPerEndpoint, int maxSpansPerTrace) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+        }
+        if (slowestPerEndpoint < 1 || maxSpansPerTrace < 1) {
+            throw new IllegalArgumentException("slowestPerEndpoint and maxSpansPerTrace must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.slowestPerEndpoint = slowestPerEndpoint;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+    }
+
+    /**
+     * Returns null when the request is not sampled.
+     */
+    public RequestTrace start(String requestId, String name) {
+        if (sampleRate == 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return null;
+        }
+        return new RequestTrace(requestId, name);
+    }
+
+    /**
+     * Whether a sampled request is traced on this thread.
+     */
+    public static boolean isTracing() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Opens a child of the span open on this thread, to be closed on the same thread.
+     */
+    public static Span span(String kind, String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return NOOP;
+        }
+        RequestTrace trace = parent.trace;
+        if (trace.spans.incrementAndGet() > trace.tracer().maxSpansPerTrace) {
+            trace.droppedSpans.incrementAndGet();
+            return NOOP;
+        }
+        Span span = new Span(trace, parent, kind, name);
+        parent.addChild(span);
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * Runs the task under the span open on the submitting thread.
+     */
+    public static Runnable propagate(Runnable task) {
+        Span span = CURRENT.get();
+        if (span == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = CURRENT.get();
+            CURRENT.set(span);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * The slowest traces of every endpoint, slowest first.
+     */
+    public Map<String, List<TraceView>> slowest() {
+        Map<String, List<TraceView>> result = new TreeMap<>();
+        endpoints.forEach((endpoint, traces) -> result.put(endpoint, traces.views()));
+        return result;
+    }
+
+    public List<TraceView> byRequestId(String requestId) {
+        return endpoints.values().stream()
+                .flatMap(traces -> traces.views().stream())
+                .filter(view -> requestId.equals(view.requestId()))
+                .toList();
+    }
+
+    public void clear() {
+        endpoints.clear();
+    }
+
+    private void record(RequestTrace trace) {
+        SlowestTraces traces = endpoints.get(trace.endpoint);
+        if (traces == null) {
+            if (endpoints.size() >= MAX_ENDPOINTS) {
+                return;
+            }
+            traces = endpoints.computeIfAbsent(trace.endpoint, endpoint -> new SlowestTraces());
+        }
+        traces.offer(trace);
+    }
+
+    private static void restore(Span previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * One sampled request. The filter attaches it to the threads that serve the request
+     * and finishes it once the response is complete.
+     */
+    public final class RequestTrace {
+        private final String requestId;
+        private final Instant startedAt = Instant.now();
+        private final Span root;
+        private final AtomicInteger spans = new AtomicInteger();
+        private final AtomicInteger droppedSpans = new AtomicInteger();
+        private volatile String endpoint;
+        private volatile int status;
+
+        private RequestTrace(String requestId, String name) {
+            this.requestId = requestId;
+            this.root = new Span(this, null, "request", name);
+        }
+
+        public void attach() {
+            CURRENT.set(root);
+        }
+
+        public void detach() {
+            CURRENT.remove();
+        }
+
+        public void finish(String endpoint, int status) {
+            root.end();
+            this.endpoint = endpoint;
+            this.status = status;
+            record(this);
+        }
+
+        private RequestTracer tracer() {
+            return RequestTracer.this;
+        }
+
+        private long durationNanos() {
+            return root.endNanos - root.startNanos;
+        }
+
+        private TraceView view() {
+            return new TraceView(requestId, endpoint, status, startedAt,
+                    TimeUnit.NANOSECONDS.toMicros(durationNanos()), droppedSpans.get(), root.view(root.startNanos));
+        }
+    }
+
+    public static final class Span implements AutoCloseable {
+        private final RequestTrace trace;
+        private final Span parent;
+        private final String kind;
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+        private List<Span> children;
+
+        private Span(RequestTrace trace, Span parent, String kind, String name) {
+            this.trace = trace;
+            this.parent = parent;
+            this.kind = kind;
+            this.name = name;
+        }
+
+        /**
+         * Makes the parent the open span of this thread again.
+         */
+        @Override
+        public void close() {
+            if (trace != null) {
+                end();
+                restore(parent);
+            }
+        }
+
+        private void end() {
+            endNanos = System.nanoTime();
+        }
+
+        /**
+         * Children of the request span may be added by the executor thread while the request thread reads them.
+         */
+        private synchronized void addChild(Span child) {
+            if (children == null) {
+                children = new ArrayList<>();
+            }
+            children.add(child);
+        }
+
+        private synchronized SpanView view(long traceStartNanos) {
+            List<SpanView> childViews = children == null
+                    ? List.of()
+                    : children.stream().map(child -> child.view(traceStartNanos)).toList();
+            long end = endNanos;
+            return new SpanView(kind, name,
+                    TimeUnit.NANOSECONDS.toMicros(startNanos - traceStartNanos),
+                    end == 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(end - startNanos),
+                    childViews);
+        }
+    }
+
+    /**
+     * Bounded min-heap on the duration, the fastest retained trace is the one replaced.
+     */
+    private final class SlowestTraces {
+        private final PriorityQueue<RequestTrace> traces =
+                new PriorityQueue<>(Comparator.comparingLong(RequestTrace::durationNanos));
+
+        private synchronized void offer(RequestTrace trace) {
+            if (traces.size() < slowestPerEndpoint) {
+                traces.add(trace);
+            } else if (traces.peek().durationNanos() < trace.durationNanos()) {
+                traces.poll();
+                traces.add(trace);
+            }
+        }
+
+        private synchronized List<TraceView> views() {
+            return traces.stream()
+                    .sorted(Comparator.comparingLong(RequestTrace::durationNanos).reversed())
+                    .map(RequestTrace::view)
+                    .toList();
+        }
+    }
+
+    /**
+     * Durations and offsets from the start of the request are in microseconds, -1 for a span still open.
+     */
+    public record TraceView(String requestId, String endpoint, int status, Instant startedAt,
+                            long durationMicros, int droppedSpans, SpanView root) {
+    }
+
+    public record SpanView(String kind, String name, long startMicros, long durationMicros,
+                           List<SpanView> children) {
+    }
+}
@@ -0,0 +1,96 @@
+package com.edu.ulab.app.util;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets through only the first N records per second of every call site below WARN,
+ * N is configured per logger package with callSiteLimit elements: package=N, a negative N disables sampling.
+ * The most specific package wins.
+ * <p>
+ * A call site is identified by logger name and message pattern. Turbo filters run before
+ * the logging event is created, so arguments of a dropped record are never rendered.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+    private static final int UNLIMITED = -1;
+    private static final int MAX_CALL_SITES = 10_000;
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final Map<String, Integer> packageLimits = new ConcurrentHashMap<>();
+    private final Map<String, Integer> loggerLimits = new ConcurrentHashMap<>();
+    private final Map<CallSite, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Joran adder for {@code <callSiteLimit>com.edu.ulab.app.facade=50</callSiteLimit>}.
+     */
+    public void addCallSiteLimit(String packageLimit) {
+        int separator = packageLimit.lastIndexOf('=');
+        if (separator < 1) {
+            addError("callSiteLimit must look like package=limit: " + packageLimit);
+            return;
+        }
+        packageLimits.put(packageLimit.substring(0, separator).trim(),
+                Integer.parseInt(packageLimit.substring(separator + 1).trim()));
+        loggerLimits.clear();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (!isStarted() || format == null || level.isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        int limit = loggerLimits.computeIfAbsent(logger.getName(), this::limitOf);
+        if (limit < 0) {
+            return FilterReply.NEUTRAL;
+        }
+        if (windows.size() >= MAX_CALL_SITES) {
+            // message patterns built at runtime would grow the map without bound
+            windows.clear();
+        }
+        Window window = windows.computeIfAbsent(new CallSite(logger.getName(), format), site -> new Window());
+        return window.tryAcquire(System.nanoTime() / WINDOW_NANOS, limit) ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    private int limitOf(String loggerName) {
+        String name = loggerName;
+        while (true) {
+            Integer limit = packageLimits.get(name);
+            if (limit != null) {
+                return limit;
+            }
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                return UNLIMITED;
+            }
+            name = name.substring(0, dot);
+        }
+    }
+
+    private record CallSite(String logger, String format) {
+    }
+
+    /**
+     * Fixed one-second window. A record racing with the reset may be counted in either window,
+     * which is precise enough for sampling.
+     */
+    private static final class Window {
+        private final AtomicLong second = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicInteger count = new AtomicInteger();
+
+        private boolean tryAcquire(long nowSecond, int limit) {
+            long current = second.get();
+            if (current != nowSecond && second.compareAndSet(current, nowSecond)) {
+                count.set(0);
+            }
+            return count.incrementAndGet() <= limit;
+        }
+    }
+}
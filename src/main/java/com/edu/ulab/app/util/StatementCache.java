@@ -0,0 +1,243 @@
+package com.edu.ulab.app.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PreparedStatement cache, kept per physical connection and keyed by SQL text and generated-keys mode.
+ * Each connection holds at most maxStatementsPerConnection statements, the least recently used is closed.
+ * <p>
+ * Statements are prepared on the connection unwrapped from the pool proxy, because the pool
+ * closes statements prepared through the proxy when the connection is returned.
+ * Statements of connections retired by the pool are closed on the next new connection seen by the cache.
+ * <p>
+ * Callers get a handle whose close() returns the statement to the cache instead of closing it.
+ */
+@Slf4j
+public class StatementCache {
+    private final int maxStatementsPerConnection;
+    private final Map<Connection, ConnectionStatements> connections = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatementCache(int maxStatementsPerConnection) {
+        if (maxStatementsPerConnection < 1) {
+            throw new IllegalArgumentException("maxStatementsPerConnection must be positive");
+        }
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    /**
+     * Exposes hit, miss and eviction counts and the number of cached statements.
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jdbc.statements.cache.gets", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .description("PreparedStatements taken from the cache")
+                .register(registry);
+        FunctionCounter.builder("jdbc.statements.cache.gets", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .description("PreparedStatements prepared by the driver")
+                .register(registry);
+        FunctionCounter.builder("jdbc.statements.cache.evictions", evictions, LongAdder::sum)
+                .description("PreparedStatements closed by LRU eviction")
+                .register(registry);
+        Gauge.builder("jdbc.statements.cache.size", this, StatementCache::size)
+                .description("PreparedStatements held open by the cache")
+                .register(registry);
+    }
+
+    public PreparedStatement prepareStatement(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        Connection physical = connection.unwrap(Connection.class);
+        ConnectionStatements statements = connections.get(physical);
+        if (statements == null) {
+            purgeClosedConnections();
+            statements = connections.computeIfAbsent(physical, c -> new ConnectionStatements());
+        }
+        return statements.acquire(physical, new StatementKey(sql, autoGeneratedKeys));
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return connections.values().stream().mapToInt(ConnectionStatements::size).sum();
+    }
+
+    /**
+     * Closes every cached statement, statements in use are closed when they are returned.
+     */
+    public void clear() {
+        connections.values().forEach(ConnectionStatements::closeAll);
+        connections.clear();
+    }
+
+    private void purgeClosedConnections() {
+        connections.entrySet().removeIf(entry -> {
+            if (isClosed(entry.getKey())) {
+                entry.getValue().closeAll();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException exc) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException exc) {
+            log.info(exc.getMessage());
+        }
+    }
+
+    private record StatementKey(String sql, int autoGeneratedKeys) {
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * Statements of one connection in access order.
+     * A connection is used by one thread at a time, the lock only guards against purging.
+     */
+    private final class ConnectionStatements extends LinkedHashMap<StatementKey, CachedStatement> {
+
+        private ConnectionStatements() {
+            super(16, 0.75f, true);
+        }
+
+        private synchronized PreparedStatement acquire(Connection physical, StatementKey key) throws SQLException {
+            CachedStatement cached = get(key);
+            if (cached != null && cached.statement.isClosed()) {
+                remove(key);
+                cached = null;
+            }
+            if (cached == null) {
+                misses.increment();
+                cached = new CachedStatement(physical.prepareStatement(key.sql(), key.autoGeneratedKeys()));
+                cached.inUse = true;
+                put(key, cached);
+                return handle(this, cached);
+            }
+            if (cached.inUse) {
+                // the same SQL is already open on this connection, hand out an uncached statement
+                misses.increment();
+                return physical.prepareStatement(key.sql(), key.autoGeneratedKeys());
+            }
+            hits.increment();
+            cached.inUse = true;
+            return handle(this, cached);
+        }
+
+        private synchronized void release(CachedStatement cached) throws SQLException {
+            cached.inUse = false;
+            if (cached.evicted) {
+                cached.statement.close();
+                return;
+            }
+            cached.statement.clearParameters();
+            cached.statement.clearBatch();
+            cached.statement.clearWarnings();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StatementKey, CachedStatement> eldest) {
+            if (size() <= maxStatementsPerConnection) {
+                return false;
+            }
+            evictions.increment();
+            evict(eldest.getValue());
+            return true;
+        }
+
+        private synchronized void closeAll() {
+            values().forEach(this::evict);
+            super.clear();
+        }
+
+        private void evict(CachedStatement cached) {
+            cached.evicted = true;
+            if (!cached.inUse) {
+                closeQuietly(cached.statement);
+            }
+        }
+    }
+
+    private static PreparedStatement handle(ConnectionStatements owner, CachedStatement cached) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            owner.release(cached);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Cached " + cached.statement;
+                    default:
+                        if (closed) {
+                            throw new SQLException("Statement is closed");
+                        }
+                }
+                try {
+                    return method.invoke(cached.statement, args);
+                } catch (InvocationTargetException exc) {
+                    throw exc.getCause();
+                }
+            }
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, handler);
+    }
+}
@@ -0,0 +1,39 @@
+package com.edu.ulab.app.util;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * Binds one connection and one transaction to a whole facade operation.
+ * JPA, JdbcTemplate and JdbcHelper all join the bound transaction,
+ * so every statement of the operation runs on the same connection and commits atomically.
+ */
+@Component
+public class UnitOfWork {
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTemplate;
+
+    public UnitOfWork(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate.setReadOnly(true);
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        return transactionTemplate.execute(status -> work.get());
+    }
+
+    public void run(Runnable work) {
+        transactionTemplate.executeWithoutResult(status -> work.run());
+    }
+
+    /**
+     * Shares one connection between the reads of an operation, without write locks.
+     */
+    public <T> T read(Supplier<T> work) {
+        return readOnlyTemplate.execute(status -> work.get());
+    }
+}
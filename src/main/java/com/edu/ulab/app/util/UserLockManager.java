@@ -0,0 +1,136 @@
+package com.edu.ulab.app.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes the facade operations on the same user: a user id maps to one of a fixed number of locks,
+ * so the memory is bounded and different users run in parallel unless they share a stripe.
+ * <p>
+ * A wait is bounded by maxWait, then RejectedExecutionException is thrown and the request is answered with 503.
+ * withUserLocks takes the stripes of several users in ascending order, two batches never wait for each other
+ * in a cycle. Taking another stripe while holding one outside withUserLocks would break that order,
+ * only re-entering a held stripe is allowed.
+ * <p>
+ * Callers lock before the unit of work, a waiting thread holds no connection.
+ * The locks are local to the instance, the database still locks the rows against other instances.
+ * <p>
+ * Published as user.lock.acquisitions{contended}, user.lock.wait for contended acquisitions
+ * and user.lock.timeouts.
+ */
+public class UserLockManager {
+    private final ReentrantLock[] stripes;
+    private final int shift;
+    private final long maxWaitNanos;
+    private final Counter uncontended;
+    private final Counter contended;
+    private final Counter timeouts;
+    private final Timer waitTimer;
+
+    public UserLockManager(int stripeCount, Duration maxWait, MeterRegistry meterRegistry) {
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1 || maxWait.isNegative()) {
+            throw new IllegalArgumentException("stripeCount must be a power of two, maxWait must not be negative");
+        }
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.shift = Long.SIZE - Integer.numberOfTrailingZeros(stripeCount);
+        this.maxWaitNanos = maxWait.toNanos();
+
+        this.uncontended = acquisitionCounter(meterRegistry, "false");
+        this.contended = acquisitionCounter(meterRegistry, "true");
+        this.timeouts = Counter.builder("user.lock.timeouts")
+                .description("User lock waits given up after the maximum wait")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("user.lock.wait")
+                .description("Time waiting for a user lock held by another operation")
+                .register(meterRegistry);
+    }
+
+    public <T> T withUserLock(long userId, Supplier<T> action) {
+        ReentrantLock lock = stripes[stripe(userId)];
+        acquire(lock, System.nanoTime() + maxWaitNanos);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void withUserLock(long userId, Runnable action) {
+        withUserLock(userId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * maxWait bounds the wait for all the locks together, the ones taken are released if one is not.
+     */
+    public <T> T withUserLocks(Collection<Long> userIds, Supplier<T> action) {
+        int[] order = userIds.stream()
+                .mapToInt(this::stripe)
+                .distinct()
+                .sorted()
+                .toArray();
+        long deadline = System.nanoTime() + maxWaitNanos;
+        int held = 0;
+        try {
+            for (int stripe : order) {
+                acquire(stripes[stripe], deadline);
+                held++;
+            }
+            return action.get();
+        } finally {
+            for (int i = held - 1; i >= 0; i--) {
+                stripes[order[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Fibonacci hashing, consecutive ids land on distant stripes.
+     */
+    private int stripe(long userId) {
+        return shift == Long.SIZE ? 0 : (int) ((userId * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void acquire(ReentrantLock lock, long deadline) {
+        if (lock.tryLock()) {
+            uncontended.increment();
+            return;
+        }
+        contended.increment();
+        long started = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(deadline - started, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a user lock", exc);
+        } finally {
+            waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new RejectedExecutionException("User is locked by another operation, waited "
+                    + Duration.ofNanos(maxWaitNanos));
+        }
+    }
+
+    private static Counter acquisitionCounter(MeterRegistry registry, String contended) {
+        return Counter.builder("user.lock.acquisitions")
+                .tag("contended", contended)
+                .description("User lock acquisitions, contended when the lock was held by another operation")
+                .register(registry);
+    }
+}
@@ -1,31 +1,52 @@
 package com.edu.ulab.app.web;
 
 import com.edu.ulab.app.facade.BookDataFacade;
+import com.edu.ulab.app.util.IdempotencyCache;
 import com.edu.ulab.app.web.constant.WebConstant;
 import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.response.BookBatchResponse;
+import com.edu.ulab.app.web.response.BookPageResponse;
 import com.edu.ulab.app.web.response.BookResponse;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.constraints.Pattern;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static com.edu.ulab.app.web.constant.WebConstant.REQUEST_ID_PATTERN;
 import static com.edu.ulab.app.web.constant.WebConstant.RQID;
 
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping(value = WebConstant.VERSION_URL + "/book",
         produces = MediaType.APPLICATION_JSON_VALUE)
 public class BookController {
     private final BookDataFacade bookDataFacade;
+    private final Executor databaseExecutor;
+    private final IdempotencyCache idempotencyCache;
 
-    public BookController(BookDataFacade bookDataFacade) {
+    /**
+     * Facade calls run on databaseExecutor, streamed bodies run on it as the MVC async executor.
+     */
+    public BookController(BookDataFacade bookDataFacade,
+                          @Qualifier("databaseExecutor") Executor databaseExecutor,
+                          IdempotencyCache idempotencyCache) {
         this.bookDataFacade = bookDataFacade;
+        this.databaseExecutor = databaseExecutor;
+        this.idempotencyCache = idempotencyCache;
     }
 
     @PostMapping(value = "/create")
@@ -34,13 +55,16 @@ public class BookController {
                     @ApiResponse(description = "Book id with details",
                             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = BookResponse.class)))})
-    public BookResponse createBook(
+    public CompletableFuture<BookResponse> createBook(
             @RequestBody BookRequest request,
             @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId
     ) {
-        BookResponse response = bookDataFacade.createBook(request);
-        log.info("Response with created book: {}", response);
-        return response;
+        return idempotencyCache.execute("book.create", requestId, request,
+                () -> CompletableFuture.supplyAsync(() -> {
+                    BookResponse response = bookDataFacade.createBook(request);
+                    log.info("Response with created book: {}", response);
+                    return response;
+                }, databaseExecutor));
     }
 
     @PutMapping(value = "/update/{bookId}")
@@ -49,13 +73,15 @@ public class BookController {
                     @ApiResponse(description = "Book's details",
                             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = BookResponse.class)))})
-    public BookResponse updateBook(
+    public CompletableFuture<BookResponse> updateBook(
             @RequestBody BookRequest request,
             @PathVariable Long bookId
     ) {
-        BookResponse response = bookDataFacade.updateBook(request, bookId);
-        log.info("Response with updated book: {}", response);
-        return response;
+        return CompletableFuture.supplyAsync(() -> {
+            BookResponse response = bookDataFacade.updateBook(request, bookId);
+            log.info("Response with updated book: {}", response);
+            return response;
+        }, databaseExecutor);
     }
 
     @GetMapping(value = "/get/{bookId}")
@@ -64,17 +90,69 @@ public class BookController {
                     @ApiResponse(description = "Book's details",
                             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = BookResponse.class)))})
-    public BookResponse getBook(@PathVariable Long bookId) {
-        BookResponse response = bookDataFacade.getBookById(bookId);
-        log.info("Response with book: {}", response);
-        return response;
+    public CompletableFuture<BookResponse> getBook(@PathVariable Long bookId) {
+        return CompletableFuture.supplyAsync(() -> {
+            BookResponse response = bookDataFacade.getBookById(bookId);
+            log.info("Response with book: {}", response);
+            return response;
+        }, databaseExecutor);
+    }
+
+    @GetMapping(value = "/get")
+    @Operation(summary = "Get books, ids without a book are listed as missing.",
+            responses = {
+                    @ApiResponse(description = "Found books and the missing ids",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BookBatchResponse.class)))})
+    public CompletableFuture<BookBatchResponse> getBooks(@RequestParam List<Long> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            BookBatchResponse response = bookDataFacade.getBooksByIds(ids);
+            log.info("Response with got books: {}, missing ids: {}",
+                    response.getBooks().size(), response.getMissingIds());
+            return response;
+        }, databaseExecutor);
+    }
+
+    @GetMapping(value = "/user/{userId}")
+    @Operation(summary = "Get a page of user's books ordered by id.",
+            responses = {
+                    @ApiResponse(description = "Books and the token of the next page",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BookPageResponse.class)))})
+    public CompletableFuture<BookPageResponse> getBooksByUser(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String pageToken,
+            @RequestParam(required = false) Integer size
+    ) {
+        return CompletableFuture.supplyAsync(() -> {
+            BookPageResponse response = bookDataFacade.getBooksByUserId(userId, pageToken, size);
+            log.info("Response with page of books: {} books", response.getBooks().size());
+            return response;
+        }, databaseExecutor);
+    }
+
+    @GetMapping(value = "/user/{userId}", params = "stream=true")
+    @Operation(summary = "Stream all user's books ordered by id as a chunked JSON array.",
+            responses = {
+                    @ApiResponse(description = "Array of book's details",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    array = @ArraySchema(schema = @Schema(implementation = BookResponse.class))))})
+    public ResponseEntity<StreamingResponseBody> streamBooksByUser(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String pageToken
+    ) {
+        StreamingResponseBody body = bookDataFacade.streamBooksByUserId(userId, pageToken);
+        log.info("Streaming books of user: {}", userId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
     @DeleteMapping(value = "/delete/{bookId}")
     @Operation(summary = "Delete book.",
             responses = {@ApiResponse(description = "Response status line")})
-    public void deleteBook(@PathVariable Long bookId) {
+    public CompletableFuture<Void> deleteBook(@PathVariable Long bookId) {
         log.info("Delete books:  bookId {}", bookId);
-        bookDataFacade.deleteBook(bookId);
+        return CompletableFuture.runAsync(() -> bookDataFacade.deleteBook(bookId), databaseExecutor);
     }
 }
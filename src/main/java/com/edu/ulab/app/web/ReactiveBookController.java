@@ -0,0 +1,91 @@
+package com.edu.ulab.app.web;
+
+import com.edu.ulab.app.facade.ReactiveBookDataFacade;
+import com.edu.ulab.app.util.IdempotencyCache;
+import com.edu.ulab.app.web.constant.WebConstant;
+import com.edu.ulab.app.web.request.BookRequest;
+import com.edu.ulab.app.web.response.BookPageResponse;
+import com.edu.ulab.app.web.response.BookResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.Pattern;
+
+import static com.edu.ulab.app.web.constant.WebConstant.REQUEST_ID_PATTERN;
+import static com.edu.ulab.app.web.constant.WebConstant.RQID;
+
+/**
+ * BookController of the reactive profile, served by WebFlux.
+ */
+@Slf4j
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping(value = WebConstant.VERSION_URL + "/book",
+        produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReactiveBookController {
+    private final ReactiveBookDataFacade bookDataFacade;
+    private final IdempotencyCache idempotencyCache;
+
+    public ReactiveBookController(ReactiveBookDataFacade bookDataFacade, IdempotencyCache idempotencyCache) {
+        this.bookDataFacade = bookDataFacade;
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    @PostMapping(value = "/create")
+    public Mono<BookResponse> createBook(
+            @RequestBody BookRequest request,
+            @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId
+    ) {
+        return Mono.fromFuture(() -> idempotencyCache.execute("book.create", requestId, request,
+                () -> bookDataFacade.createBook(request)
+                        .doOnNext(response -> log.info("Response with created book: {}", response))
+                        .toFuture()));
+    }
+
+    @PutMapping(value = "/update/{bookId}")
+    public Mono<BookResponse> updateBook(
+            @RequestBody BookRequest request,
+            @PathVariable Long bookId
+    ) {
+        return bookDataFacade.updateBook(request, bookId)
+                .doOnNext(response -> log.info("Response with updated book: {}", response));
+    }
+
+    @GetMapping(value = "/get/{bookId}")
+    public Mono<BookResponse> getBook(@PathVariable Long bookId) {
+        return bookDataFacade.getBookById(bookId)
+                .doOnNext(response -> log.info("Response with book: {}", response));
+    }
+
+    @GetMapping(value = "/user/{userId}")
+    public Mono<BookPageResponse> getBooksByUser(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String pageToken,
+            @RequestParam(required = false) Integer size
+    ) {
+        return bookDataFacade.getBooksByUserId(userId, pageToken, size)
+                .doOnNext(response -> log.info("Response with page of books: {} books", response.getBooks().size()));
+    }
+
+    /**
+     * WebFlux writes the Flux as a JSON array, element by element.
+     */
+    @GetMapping(value = "/user/{userId}", params = "stream=true")
+    public Flux<BookResponse> streamBooksByUser(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String pageToken
+    ) {
+        log.info("Streaming books of user: {}", userId);
+        return bookDataFacade.streamBooksByUserId(userId, pageToken);
+    }
+
+    @DeleteMapping(value = "/delete/{bookId}")
+    public Mono<Void> deleteBook(@PathVariable Long bookId) {
+        log.info("Delete books:  bookId {}", bookId);
+        return bookDataFacade.deleteBook(bookId);
+    }
+}
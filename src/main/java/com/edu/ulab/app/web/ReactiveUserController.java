@@ -0,0 +1,67 @@
+package com.edu.ulab.app.web;
+
+import com.edu.ulab.app.facade.ReactiveUserDataFacade;
+import com.edu.ulab.app.util.IdempotencyCache;
+import com.edu.ulab.app.web.constant.WebConstant;
+import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.Pattern;
+
+import static com.edu.ulab.app.web.constant.WebConstant.REQUEST_ID_PATTERN;
+import static com.edu.ulab.app.web.constant.WebConstant.RQID;
+
+/**
+ * UserController of the reactive profile, served by WebFlux.
+ */
+@Slf4j
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping(value = WebConstant.VERSION_URL + "/user",
+        produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReactiveUserController {
+    private final ReactiveUserDataFacade userDataFacade;
+    private final IdempotencyCache idempotencyCache;
+
+    public ReactiveUserController(ReactiveUserDataFacade userDataFacade, IdempotencyCache idempotencyCache) {
+        this.userDataFacade = userDataFacade;
+        this.idempotencyCache = idempotencyCache;
+    }
+
+    @PostMapping(value = "/create")
+    public Mono<UserBookResponse> createUserWithBooks(
+            @RequestBody UserBookRequest request,
+            @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId
+    ) {
+        return Mono.fromFuture(() -> idempotencyCache.execute("user.create", requestId, request,
+                () -> userDataFacade.createUserWithBooks(request)
+                        .doOnNext(response -> log.info("Response with created user and his books: {}", response))
+                        .toFuture()));
+    }
+
+    @PutMapping(value = "/update/{userId}")
+    public Mono<UserBookResponse> updateUserWithBooks(
+            @RequestBody UserBookRequest request,
+            @PathVariable Long userId
+    ) {
+        return userDataFacade.updateUserWithBooks(request, userId)
+                .doOnNext(response -> log.info("Response with updated user and his books: {}", response));
+    }
+
+    @GetMapping(value = "/get/{userId}")
+    public Mono<UserBookResponse> getUserWithBooks(@PathVariable Long userId) {
+        return userDataFacade.getUserWithBooks(userId)
+                .doOnNext(response -> log.info("Response with got user and his books: {}", response));
+    }
+
+    @DeleteMapping(value = "/delete/{userId}")
+    public Mono<Void> deleteUserWithBooks(@PathVariable Long userId) {
+        log.info("Delete user and his books:  userId {}", userId);
+        return userDataFacade.deleteUserWithBooks(userId);
+    }
+}
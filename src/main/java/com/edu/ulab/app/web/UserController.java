@@ -1,31 +1,59 @@
 package com.edu.ulab.app.web;
 
 import com.edu.ulab.app.facade.UserDataFacade;
+import com.edu.ulab.app.facade.UserImportFacade;
+import com.edu.ulab.app.util.IdempotencyCache;
 import com.edu.ulab.app.web.constant.WebConstant;
 import com.edu.ulab.app.web.request.UserBookRequest;
+import com.edu.ulab.app.web.response.UserBookBatchResponse;
 import com.edu.ulab.app.web.response.UserBookResponse;
+import com.edu.ulab.app.web.response.UserImportResponse;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.Pattern;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static com.edu.ulab.app.web.constant.WebConstant.REQUEST_ID_PATTERN;
 import static com.edu.ulab.app.web.constant.WebConstant.RQID;
 
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping(value = WebConstant.VERSION_URL + "/user",
         produces = MediaType.APPLICATION_JSON_VALUE)
 public class UserController {
     private final UserDataFacade userDataFacade;
+    private final UserImportFacade userImportFacade;
+    private final Executor databaseExecutor;
+    private final IdempotencyCache idempotencyCache;
 
-    public UserController(UserDataFacade userDataFacade) {
+    /**
+     * Facade calls run on databaseExecutor, streamed bodies run on it as the MVC async executor.
+     */
+    public UserController(UserDataFacade userDataFacade,
+                          UserImportFacade userImportFacade,
+                          @Qualifier("databaseExecutor") Executor databaseExecutor,
+                          IdempotencyCache idempotencyCache) {
         this.userDataFacade = userDataFacade;
+        this.userImportFacade = userImportFacade;
+        this.databaseExecutor = databaseExecutor;
+        this.idempotencyCache = idempotencyCache;
     }
 
     @PostMapping(value = "/create")
@@ -34,13 +62,16 @@ public class UserController {
                     @ApiResponse(description = "User id with list of book ids",
                             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = UserBookResponse.class)))})
-    public UserBookResponse createUserWithBooks(
+    public CompletableFuture<UserBookResponse> createUserWithBooks(
             @RequestBody UserBookRequest request,
             @RequestHeader(RQID) @Pattern(regexp = REQUEST_ID_PATTERN) final String requestId
     ) {
-        UserBookResponse response = userDataFacade.createUserWithBooks(request);
-        log.info("Response with created user and his books: {}", response);
-        return response;
+        return idempotencyCache.execute("user.create", requestId, request,
+                () -> CompletableFuture.supplyAsync(() -> {
+                    UserBookResponse response = userDataFacade.createUserWithBooks(request);
+                    log.info("Response with created user and his books: {}", response);
+                    return response;
+                }, databaseExecutor));
     }
 
     @PutMapping(value = "/update/{userId}")
@@ -49,13 +80,15 @@ public class UserController {
                     @ApiResponse(description = "User id with list of book ids",
                             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = UserBookResponse.class)))})
-    public UserBookResponse updateUserWithBooks(
+    public CompletableFuture<UserBookResponse> updateUserWithBooks(
             @RequestBody UserBookRequest request,
             @PathVariable Long userId
     ) {
-        UserBookResponse response = userDataFacade.updateUserWithBooks(request, userId);
-        log.info("Response with updated user and his books: {}", response);
-        return response;
+        return CompletableFuture.supplyAsync(() -> {
+            UserBookResponse response = userDataFacade.updateUserWithBooks(request, userId);
+            log.info("Response with updated user and his books: {}", response);
+            return response;
+        }, databaseExecutor);
     }
 
     @GetMapping(value = "/get/{userId}")
@@ -64,19 +97,81 @@ public class UserController {
                     @ApiResponse(description = "User id with list of book ids",
                             content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
                                     schema = @Schema(implementation = UserBookResponse.class)))})
-    public UserBookResponse getUserWithBooks(@PathVariable Long userId) {
-        UserBookResponse response = userDataFacade.getUserWithBooks(userId);
-        log.info("Response with got user and his books: {}", response);
-        return response;
+    public CompletableFuture<UserBookResponse> getUserWithBooks(@PathVariable Long userId) {
+        return CompletableFuture.supplyAsync(() -> {
+            UserBookResponse response = userDataFacade.getUserWithBooks(userId);
+            log.info("Response with got user and his books: {}", response);
+            return response;
+        }, databaseExecutor);
+    }
+
+    @GetMapping(value = "/get")
+    @Operation(summary = "Get users with their lists of books, ids without a user are listed as missing.",
+            responses = {
+                    @ApiResponse(description = "Found users with lists of book ids and the missing ids",
+                            content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = UserBookBatchResponse.class)))})
+    public CompletableFuture<UserBookBatchResponse> getUsersWithBooks(@RequestParam List<Long> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            UserBookBatchResponse response = userDataFacade.getUsersWithBooks(ids);
+            log.info("Response with got users: {}, missing ids: {}",
+                    response.getUsers().size(), response.getMissingIds());
+            return response;
+        }, databaseExecutor);
     }
 
     @DeleteMapping(value = "/delete/{userId}")
     @Operation(summary = "Delete user with his list of books.",
             responses = {@ApiResponse(description = "Response status line")})
-    public void deleteUserWithBooks(@PathVariable Long userId) {
+    public CompletableFuture<Void> deleteUserWithBooks(@PathVariable Long userId) {
         log.info("Delete user and his books:  userId {}", userId);
-        userDataFacade.deleteUserWithBooks(userId);
+        return CompletableFuture.runAsync(() -> userDataFacade.deleteUserWithBooks(userId), databaseExecutor);
     }
 
+    /**
+     * Resumable: a rerun with afterUserId set to the userId of the last complete line continues the export.
+     * The output is gzip-encoded when the client accepts gzip.
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export all users with their book ids as NDJSON, ordered by user id.",
+            responses = {
+                    @ApiResponse(description = "One user id with list of book ids per line",
+                            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                    schema = @Schema(implementation = UserBookResponse.class)))})
+    public ResponseEntity<StreamingResponseBody> exportUsersWithBooks(
+            @RequestParam(defaultValue = "0") long afterUserId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        StreamingResponseBody body = userDataFacade.exportUsersWithBooks(afterUserId, gzip);
+        log.info("Exporting users with books after user id: {}", afterUserId);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
 
+    /**
+     * The body is read and the response written on a databaseExecutor thread,
+     * so the upload is consumed only as fast as the batches are inserted.
+     */
+    @PostMapping(value = "/import",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Import users with books from NDJSON or a JSON array of user book requests.",
+            responses = {
+                    @ApiResponse(description = "NDJSON: ids or error per record, then the import summary",
+                            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                                    schema = @Schema(implementation = UserImportResponse.class)))})
+    public ResponseEntity<StreamingResponseBody> importUsersWithBooks(HttpServletRequest request) throws IOException {
+        boolean jsonArray = MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        log.info("Import users with books: jsonArray {}", jsonArray);
+        InputStream in = request.getInputStream();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> userImportFacade.importUsersWithBooks(in, out, jsonArray));
+    }
 }
@@ -1,9 +1,12 @@
 package com.edu.ulab.app.web.filter;
 
+import com.edu.ulab.app.util.RequestTracer;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -13,18 +16,61 @@ import java.io.IOException;
 
 @Slf4j
 @Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class HttpRequestFilter extends OncePerRequestFilter {
+    private static final String TRACE_ATTRIBUTE = HttpRequestFilter.class.getName() + ".trace";
+
+    private final RequestTracer requestTracer;
+
+    public HttpRequestFilter(RequestTracer requestTracer) {
+        this.requestTracer = requestTracer;
+    }
+
+    /**
+     * Async results of the controllers are rendered in a second, async dispatch,
+     * which needs the requestId and the trace as well.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
     @Override
     protected void doFilterInternal(final HttpServletRequest request,
                                     final HttpServletResponse response,
                                     final FilterChain filterChain) throws ServletException, IOException {
         String requestId = request.getHeader("rqid");
         MDC.put("requestId", requestId);
-        log.info("RequestId : {}", requestId);
+        RequestTracer.RequestTrace trace;
+        if (isAsyncDispatch(request)) {
+            trace = (RequestTracer.RequestTrace) request.getAttribute(TRACE_ATTRIBUTE);
+        } else {
+            log.info("RequestId : {}", requestId);
+            trace = requestTracer.start(requestId, request.getMethod() + " " + request.getRequestURI());
+        }
+        if (trace != null) {
+            trace.attach();
+        }
         try {
             filterChain.doFilter(request, response);
         } finally {
+            if (trace != null) {
+                trace.detach();
+                finishOrKeep(trace, request, response);
+            }
             MDC.remove("requestId");
         }
     }
+
+    /**
+     * A request gone async is finished by the filter of its async dispatch.
+     */
+    private void finishOrKeep(RequestTracer.RequestTrace trace, HttpServletRequest request, HttpServletResponse response) {
+        if (isAsyncStarted(request)) {
+            request.setAttribute(TRACE_ATTRIBUTE, trace);
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        trace.finish(request.getMethod() + " " + (pattern == null ? "UNMAPPED" : pattern), response.getStatus());
+    }
 }
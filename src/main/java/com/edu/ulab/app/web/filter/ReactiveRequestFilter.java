@@ -0,0 +1,27 @@
+package com.edu.ulab.app.web.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import static com.edu.ulab.app.web.constant.WebConstant.RQID;
+
+/**
+ * HttpRequestFilter of the reactive profile. A request hops between event loop threads,
+ * so the requestId is only logged here and not kept in the MDC.
+ */
+@Slf4j
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRequestFilter implements WebFilter {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        log.info("RequestId : {}", exchange.getRequest().getHeaders().getFirst(RQID));
+        return chain.filter(exchange);
+    }
+}
@@ -4,6 +4,8 @@ import com.edu.ulab.app.exception.*;
 import com.edu.ulab.app.web.response.BaseWebResponse;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -12,9 +14,11 @@ import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.WebRequest;
 
 import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ControllerExceptionHandler {
 
     @ExceptionHandler({NotFoundException.class})
@@ -51,6 +55,23 @@ public class ControllerExceptionHandler {
                 HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler({RequestIdConflictException.class})
+    public ResponseEntity<?> handleRequestIdConflictException(@NonNull final RequestIdConflictException exc,
+                                                              WebRequest request) {
+        return new ResponseEntity<>(basicActions(
+                request, "Request id is already used", exc.getMessage()),
+                HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler({RejectedExecutionException.class})
+    public ResponseEntity<?> handleRejectedExecutionException(@NonNull final RejectedExecutionException exc,
+                                                              WebRequest request) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(basicActions(request, "Service is overloaded, retry later",
+                        exc.getCause() == null ? exc.getMessage() : exc.getCause().getMessage()));
+    }
+
     private ApiException basicActions(WebRequest request, String message, String debugMessage) {
         log.info("Request URL : {}, Exception : {}",
                 ((ServletWebRequest) request).getRequest().getRequestURI(), debugMessage);
@@ -0,0 +1,71 @@
+package com.edu.ulab.app.web.handler;
+
+import com.edu.ulab.app.exception.ApiException;
+import com.edu.ulab.app.exception.NotFoundException;
+import com.edu.ulab.app.exception.RequestIdConflictException;
+import com.edu.ulab.app.exception.WrongBookException;
+import com.edu.ulab.app.exception.WrongUserException;
+import com.edu.ulab.app.web.response.BaseWebResponse;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * ControllerExceptionHandler of the reactive profile, with the same statuses and bodies.
+ * R2DBC errors reach it translated into DataAccessException.
+ */
+@Slf4j
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveControllerExceptionHandler {
+
+    @ExceptionHandler({NotFoundException.class})
+    public ResponseEntity<BaseWebResponse> handleBadRequestException(@NonNull final NotFoundException exc) {
+        log.error(ExceptionHandlerUtils.buildErrorMessage(exc));
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(new BaseWebResponse(exc.getMessage()));
+    }
+
+    @ExceptionHandler({WrongUserException.class})
+    public ResponseEntity<?> handleWrongUserException(@NonNull final WrongUserException exc,
+                                                      ServerHttpRequest request) {
+        return new ResponseEntity<>(basicActions(
+                request, "User details is wrong", exc.getMessage()),
+                HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler({WrongBookException.class})
+    public ResponseEntity<?> handleWrongBookException(@NonNull final WrongBookException exc,
+                                                      ServerHttpRequest request) {
+        return new ResponseEntity<>(basicActions(
+                request, "Book details is wrong", exc.getMessage()),
+                HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler({RequestIdConflictException.class})
+    public ResponseEntity<?> handleRequestIdConflictException(@NonNull final RequestIdConflictException exc,
+                                                              ServerHttpRequest request) {
+        return new ResponseEntity<>(basicActions(
+                request, "Request id is already used", exc.getMessage()),
+                HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler({DataAccessException.class})
+    public ResponseEntity<?> handleDataAccessException(@NonNull final DataAccessException exc,
+                                                       ServerHttpRequest request) {
+        return new ResponseEntity<>(basicActions(
+                request, "Internal database error", exc.getMostSpecificCause().getMessage()),
+                HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private ApiException basicActions(ServerHttpRequest request, String message, String debugMessage) {
+        log.info("Request URL : {}, Exception : {}", request.getPath(), debugMessage);
+        return new ApiException(message, debugMessage);
+    }
+}
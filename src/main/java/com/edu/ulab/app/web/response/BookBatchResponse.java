@@ -0,0 +1,16 @@
+package com.edu.ulab.app.web.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Books found by id in the order of the request, missingIds lists the ids without a book.
+ */
+@Data
+@Builder
+public class BookBatchResponse {
+    private List<BookResponse> books;
+    private List<Long> missingIds;
+}
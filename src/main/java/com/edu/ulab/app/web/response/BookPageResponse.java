@@ -0,0 +1,16 @@
+package com.edu.ulab.app.web.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of books, nextPageToken is null on the last page.
+ */
+@Data
+@Builder
+public class BookPageResponse {
+    private List<BookResponse> books;
+    private String nextPageToken;
+}
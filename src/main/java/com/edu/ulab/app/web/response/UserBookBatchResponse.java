@@ -0,0 +1,16 @@
+package com.edu.ulab.app.web.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Users found by id in the order of the request, missingIds lists the ids without a user.
+ */
+@Data
+@Builder
+public class UserBookBatchResponse {
+    private List<UserBookResponse> users;
+    private List<Long> missingIds;
+}
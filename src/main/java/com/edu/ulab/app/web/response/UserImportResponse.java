@@ -0,0 +1,21 @@
+package com.edu.ulab.app.web.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Outcome of one imported record: the generated ids, or the error that rejected it.
+ * Index is the position of the record in the upload, starting from 0.
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImportResponse {
+    private long index;
+    private Long userId;
+    private List<Long> booksIdList;
+    private String error;
+}
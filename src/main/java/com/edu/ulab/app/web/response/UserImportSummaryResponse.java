@@ -0,0 +1,17 @@
+package com.edu.ulab.app.web.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Last line of an import response.
+ */
+@Data
+@Builder
+public class UserImportSummaryResponse {
+    private long records;
+    private long created;
+    private long failed;
+    private long elapsedMillis;
+    private double recordsPerSecond;
+}
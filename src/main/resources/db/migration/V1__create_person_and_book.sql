@@ -1,5 +1,4 @@
-DROP TABLE IF EXISTS PERSON;
-CREATE TABLE IF NOT EXISTS PERSON
+CREATE TABLE PERSON
 (
     ID BIGINT AUTO_INCREMENT PRIMARY KEY,
     FULL_NAME VARCHAR (255),
@@ -7,8 +6,7 @@ CREATE TABLE IF NOT EXISTS PERSON
     AGE INTEGER
 );
 
-DROP TABLE IF EXISTS BOOK;
-CREATE TABLE IF NOT EXISTS BOOK
+CREATE TABLE BOOK
 (
     ID BIGINT AUTO_INCREMENT PRIMARY KEY,
     TITLE VARCHAR (255),
@@ -0,0 +1,7 @@
+-- every lookup and delete of the books of a user filters on USER_ID,
+-- ID as the second column serves the keyset pages (USER_ID = ? AND ID > ? ORDER BY ID)
+CREATE INDEX BOOK_USER_ID_IDX ON BOOK (USER_ID, ID);
+
+-- books of a deleted user go together with him
+ALTER TABLE BOOK
+    ADD CONSTRAINT BOOK_USER_ID_FK FOREIGN KEY (USER_ID) REFERENCES PERSON (ID) ON DELETE CASCADE;
@@ -0,0 +1,4 @@
+-- the default rows were inserted with explicit ids, generated ids must not run into them
+ALTER TABLE PERSON ALTER COLUMN ID RESTART WITH 1002;
+
+ALTER TABLE BOOK ALTER COLUMN ID RESTART WITH 3004;
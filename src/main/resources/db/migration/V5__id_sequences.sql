@@ -0,0 +1,14 @@
+-- Hibernate reserves ids in blocks of 50, the pooled-lo optimizer hands out NEXT VALUE .. NEXT VALUE + 49.
+-- Inserts of the JDBC backends take a single value of the same sequence through the column default,
+-- so the ids of both never overlap, at the cost of gaps in the ids of those inserts.
+CREATE SEQUENCE PERSON_SEQ START WITH 1002 INCREMENT BY 50;
+
+CREATE SEQUENCE BOOK_SEQ START WITH 3004 INCREMENT BY 50;
+
+ALTER TABLE PERSON ALTER COLUMN ID DROP IDENTITY;
+
+ALTER TABLE PERSON ALTER COLUMN ID SET DEFAULT NEXT VALUE FOR PERSON_SEQ;
+
+ALTER TABLE BOOK ALTER COLUMN ID DROP IDENTITY;
+
+ALTER TABLE BOOK ALTER COLUMN ID SET DEFAULT NEXT VALUE FOR BOOK_SEQ;
@@ -0,0 +1,6 @@
+-- Every backend gives the ids itself from blocks of 50 reserved from the sequences, the ORM with its pooled-lo
+-- optimizer, the others with IdBlockAllocator. Without the column defaults an insert without an id fails
+-- instead of taking a single value of a sequence and leaving a gap of 49 ids.
+ALTER TABLE PERSON ALTER COLUMN ID DROP DEFAULT;
+
+ALTER TABLE BOOK ALTER COLUMN ID DROP DEFAULT;